@@ -0,0 +1,52 @@
+package one.whr.benchmark;
+
+import one.whr.remote.dto.RpcRequest;
+import one.whr.remote.dto.RpcResponse;
+import one.whr.utils.MethodIdUtil;
+
+import java.util.Random;
+
+/**
+ * 生成不同大小的请求和响应，内容由固定种子的随机单词组成，压缩率接近真实的文本负载
+ */
+public final class BenchmarkPayloads {
+    public static final String GROUP = "benchmark";
+
+    public static final String VERSION = "1.0";
+
+    private static final String[] WORDS = {
+            "order", "user", "id", "status", "amount", "currency", "created", "updated",
+            "name", "address", "city", "price", "quantity", "sku", "true", "false"
+    };
+
+    private BenchmarkPayloads() {
+    }
+
+    /**
+     * @param size 字符数
+     * @return 指定长度的文本
+     */
+    public static String text(int size) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(size + 16);
+        while (sb.length() < size) {
+            sb.append(WORDS[random.nextInt(WORDS.length)]).append(':').append(random.nextInt(100000)).append(' ');
+        }
+        sb.setLength(size);
+        return sb.toString();
+    }
+
+    public static RpcRequest request(int size) {
+        return RpcRequest.builder()
+                .interfaceName(EchoService.class.getName())
+                .methodId(MethodIdUtil.methodId("echo", new Class<?>[]{String.class}))
+                .parameters(new Object[]{text(size)})
+                .group(GROUP)
+                .version(VERSION)
+                .build();
+    }
+
+    public static RpcResponse<Object> response(int size) {
+        return RpcResponse.generateSuccessResponse(text(size));
+    }
+}
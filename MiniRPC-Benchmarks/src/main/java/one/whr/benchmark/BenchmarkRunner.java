@@ -0,0 +1,44 @@
+package one.whr.benchmark;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次性跑出容量规划需要的基线数据：
+ * 1. 吞吐量(ops/s)，同时开启gc profiler得到每次操作的分配量(gc.alloc.rate.norm)
+ * 2. 延迟分布(us/op)，其中p0.99即p99延迟
+ * 结果分别写入throughput.json和latency.json
+ * <p>
+ * 用法: java -cp target/benchmarks.jar one.whr.benchmark.BenchmarkRunner [include regex]
+ */
+public class BenchmarkRunner {
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName();
+
+        new Runner(new OptionsBuilder()
+                .include(include)
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.SECONDS)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("throughput.json")
+                .build()).run();
+
+        new Runner(new OptionsBuilder()
+                .include(include)
+                .mode(Mode.SampleTime)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .resultFormat(ResultFormatType.JSON)
+                .result("latency.json")
+                .build()).run();
+    }
+}
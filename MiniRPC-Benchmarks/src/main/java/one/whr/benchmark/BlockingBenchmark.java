@@ -0,0 +1,121 @@
+package one.whr.benchmark;
+
+import one.whr.config.RpcServiceConfig;
+import one.whr.exception.RpcException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务实现阻塞时不同dispatcher的吞吐量
+ * blocking: 128个调用方同时调用阻塞的服务，吞吐量受dispatcher能同时执行的请求数限制
+ * isolation: 大量调用方调用限制了并发数的慢服务，同时测量另一个快服务的吞吐量，
+ * 慢服务超出上限的请求被直接拒绝，不会占满dispatcher
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=error")
+public class BlockingBenchmark {
+
+    private static final String UNLIMITED_VERSION = "unlimited";
+
+    private static final String LIMITED_VERSION = "limited";
+
+    // 慢服务的并发上限，是event-executor默认线程数的一半，快服务总有线程可用
+    private static final int SLOW_SERVICE_MAX_CONCURRENCY = Runtime.getRuntime().availableProcessors();
+
+    @Param({"event-executor", "thread-pool", "virtual-thread"})
+    public String dispatcher;
+
+    @Param({"1", "10"})
+    public int blockMillis;
+
+    private LocalRpcEnvironment environment;
+
+    private BlockingService blockingService;
+
+    private BlockingService limitedBlockingService;
+
+    private EchoService echoService;
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        environment = new LocalRpcEnvironment(dispatcher,
+                RpcServiceConfig.builder()
+                        .group(BenchmarkPayloads.GROUP)
+                        .version(UNLIMITED_VERSION)
+                        .service(new BlockingServiceImpl())
+                        .build(),
+                RpcServiceConfig.builder()
+                        .group(BenchmarkPayloads.GROUP)
+                        .version(LIMITED_VERSION)
+                        .maxConcurrency(SLOW_SERVICE_MAX_CONCURRENCY)
+                        .service(new BlockingServiceImpl())
+                        .build(),
+                RpcServiceConfig.builder()
+                        .group(BenchmarkPayloads.GROUP)
+                        .version(BenchmarkPayloads.VERSION)
+                        .service(new EchoServiceImpl())
+                        .build());
+        blockingService = environment.getProxy(BlockingService.class, RpcServiceConfig.builder()
+                .group(BenchmarkPayloads.GROUP)
+                .version(UNLIMITED_VERSION)
+                .build());
+        limitedBlockingService = environment.getProxy(BlockingService.class, RpcServiceConfig.builder()
+                .group(BenchmarkPayloads.GROUP)
+                .version(LIMITED_VERSION)
+                .build());
+        echoService = environment.getProxy(EchoService.class, RpcServiceConfig.builder()
+                .group(BenchmarkPayloads.GROUP)
+                .version(BenchmarkPayloads.VERSION)
+                .build());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        environment.close();
+    }
+
+    @Benchmark
+    @Threads(128)
+    public String blocking() {
+        return blockingService.block(blockMillis);
+    }
+
+    @Benchmark
+    @Group("isolation")
+    @GroupThreads(64)
+    public String slow() {
+        try {
+            return limitedBlockingService.block(blockMillis);
+        } catch (RpcException e) {
+            // 超过并发上限被拒绝
+            return null;
+        }
+    }
+
+    @Benchmark
+    @Group("isolation")
+    @GroupThreads(4)
+    public String fast() {
+        return echoService.echo("ping");
+    }
+}
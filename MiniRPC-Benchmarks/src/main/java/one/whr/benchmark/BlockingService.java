@@ -0,0 +1,12 @@
+package one.whr.benchmark;
+
+/**
+ * 模拟调用数据库或下游服务的阻塞服务
+ */
+public interface BlockingService {
+    /**
+     * @param millis 阻塞的时间(ms)
+     * @return 处理请求的线程名称
+     */
+    String block(int millis);
+}
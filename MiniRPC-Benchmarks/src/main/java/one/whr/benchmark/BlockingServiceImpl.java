@@ -0,0 +1,13 @@
+package one.whr.benchmark;
+
+public class BlockingServiceImpl implements BlockingService {
+    @Override
+    public String block(int millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Thread.currentThread().getName();
+    }
+}
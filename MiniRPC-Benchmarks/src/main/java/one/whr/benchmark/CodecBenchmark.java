@@ -0,0 +1,93 @@
+package one.whr.benchmark;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import one.whr.enums.CompressTypeEnum;
+import one.whr.enums.SerializationEnum;
+import one.whr.remote.dto.RpcMessage;
+import one.whr.remote.transport.codec.RpcMessageDecoder;
+import one.whr.remote.transport.codec.RpcMessageEncoder;
+import one.whr.utils.RpcConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RpcMessageEncoder / RpcMessageDecoder 对一个完整帧的编解码开销
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class CodecBenchmark {
+
+    @Param({"64", "1024", "16384"})
+    public int payloadSize;
+
+    @Param({"request", "response"})
+    public String messageType;
+
+    private EmbeddedChannel encoderChannel;
+
+    private EmbeddedChannel decoderChannel;
+
+    private RpcMessage message;
+
+    private ByteBuf frame;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        encoderChannel = new EmbeddedChannel(new RpcMessageEncoder());
+        decoderChannel = new EmbeddedChannel(new RpcMessageDecoder());
+        boolean request = "request".equals(messageType);
+        message = RpcMessage.builder()
+                .messageType(request ? RpcConstants.REQUEST_TYPE : RpcConstants.RESPONSE_TYPE)
+                .codec(SerializationEnum.KRYO.getCode())
+                .compress(CompressTypeEnum.GZIP.getCode())
+                .data(request ? BenchmarkPayloads.request(payloadSize) : BenchmarkPayloads.response(payloadSize))
+                .build();
+        // 第一个请求在连接内定义服务，之后的请求只带服务ID，测量的是之后的帧
+        encoderChannel.writeOutbound(message);
+        ByteBuf first = encoderChannel.readOutbound();
+        decoderChannel.writeInbound(first);
+        decoderChannel.readInbound();
+        encoderChannel.writeOutbound(message);
+        frame = encoderChannel.readOutbound();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        frame.release();
+        encoderChannel.finishAndReleaseAll();
+        decoderChannel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public int encode() {
+        encoderChannel.writeOutbound(message);
+        ByteBuf encoded = encoderChannel.readOutbound();
+        int length = encoded.readableBytes();
+        encoded.release();
+        return length;
+    }
+
+    @Benchmark
+    public Object decode() {
+        decoderChannel.writeInbound(frame.retainedDuplicate());
+        return decoderChannel.readInbound();
+    }
+}
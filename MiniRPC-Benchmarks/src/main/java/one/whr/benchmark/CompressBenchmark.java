@@ -0,0 +1,109 @@
+package one.whr.benchmark;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import one.whr.compress.Compress;
+import one.whr.extension.ExtensionLoader;
+import one.whr.serialization.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各个Compress扩展的压缩和解压吞吐量，输入是序列化之后的RpcRequest
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class CompressBenchmark {
+
+    // 扩展名称，与META-INF/extensions/one.whr.compress.Compress中的配置一致
+    @Param({"gzip", "lz4", "zstd"})
+    public String compress;
+
+    @Param({"64", "1024", "16384"})
+    public int payloadSize;
+
+    private Compress instance;
+
+    private byte[] raw;
+
+    private byte[] compressed;
+
+    // 流式接口的输出，每次调用前清空，与编码器一样写入复用的ByteBuf
+    private ByteBuf target;
+
+    private byte[] readBuffer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        instance = ExtensionLoader.getExtensionLoader(Compress.class).getExtension(compress);
+        raw = ExtensionLoader.getExtensionLoader(Serializer.class).getExtension("kryo")
+                .serialize(BenchmarkPayloads.request(payloadSize));
+        compressed = instance.compress(raw);
+        target = Unpooled.buffer(raw.length * 2 + 64);
+        readBuffer = new byte[4096];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        target.release();
+    }
+
+    @Benchmark
+    public byte[] compress() {
+        return instance.compress(raw);
+    }
+
+    @Benchmark
+    public byte[] decompress() {
+        return instance.decompress(compressed);
+    }
+
+    /**
+     * 编码器使用的流式压缩
+     */
+    @Benchmark
+    public int compressStream() throws IOException {
+        target.clear();
+        try (OutputStream out = instance.compress(new ByteBufOutputStream(target))) {
+            out.write(raw);
+        }
+        return target.readableBytes();
+    }
+
+    /**
+     * 解码器使用的流式解压
+     */
+    @Benchmark
+    public int decompressStream() throws IOException {
+        int total = 0;
+        try (InputStream in = instance.decompress(new ByteArrayInputStream(compressed))) {
+            int n;
+            while ((n = in.read(readBuffer)) > -1) {
+                total += n;
+            }
+        }
+        return total;
+    }
+}
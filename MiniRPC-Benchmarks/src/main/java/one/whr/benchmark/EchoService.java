@@ -0,0 +1,8 @@
+package one.whr.benchmark;
+
+/**
+ * 基准测试使用的服务接口，直接返回参数，使得测量结果只包含框架本身的开销
+ */
+public interface EchoService {
+    String echo(String message);
+}
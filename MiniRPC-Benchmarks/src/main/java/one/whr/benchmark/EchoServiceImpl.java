@@ -0,0 +1,8 @@
+package one.whr.benchmark;
+
+public class EchoServiceImpl implements EchoService {
+    @Override
+    public String echo(String message) {
+        return message;
+    }
+}
@@ -0,0 +1,79 @@
+package one.whr.benchmark;
+
+import one.whr.config.RpcServiceConfig;
+import one.whr.proxy.RpcContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通过127.0.0.1上的TCP连接比较每个消息单独flush和合并flush(rpc.transport.flush-consolidation)，以及nio和epoll
+ * 每次操作异步发出inFlight个调用并等待全部完成，每秒完成的调用数是结果乘以inFlight
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class FlushBenchmark {
+
+    @Param({"nio", "epoll"})
+    public String transport;
+
+    @Param({"0", "256"})
+    public int flushConsolidation;
+
+    @Param({"1", "16", "256"})
+    public int inFlight;
+
+    private LocalRpcEnvironment environment;
+
+    private EchoService echoService;
+
+    private String payload;
+
+    private CompletableFuture<?>[] futures;
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        environment = new LocalRpcEnvironment("event-executor", transport, flushConsolidation, RpcServiceConfig.builder()
+                .group(BenchmarkPayloads.GROUP)
+                .version(BenchmarkPayloads.VERSION)
+                .service(new EchoServiceImpl())
+                .build());
+        echoService = environment.getProxy(EchoService.class, RpcServiceConfig.builder()
+                .group(BenchmarkPayloads.GROUP)
+                .version(BenchmarkPayloads.VERSION)
+                .compress("none")
+                .build());
+        payload = BenchmarkPayloads.text(64);
+        futures = new CompletableFuture<?>[inFlight];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        environment.close();
+    }
+
+    @Benchmark
+    public Object echo() {
+        for (int i = 0; i < inFlight; i++) {
+            futures[i] = RpcContext.async(() -> echoService.echo(payload));
+        }
+        return CompletableFuture.allOf(futures).join();
+    }
+}
@@ -0,0 +1,144 @@
+package one.whr.benchmark;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import one.whr.config.RpcServiceConfig;
+import one.whr.extension.ExtensionLoader;
+import one.whr.factory.SingletonFactory;
+import one.whr.proxy.RpcClientProxy;
+import one.whr.registry.zookeeper.ZkServiceProviderImpl;
+import one.whr.remote.transport.client.ChannelProvider;
+import one.whr.remote.transport.client.RpcClient;
+import one.whr.remote.transport.client.RpcClientInitializer;
+import one.whr.remote.transport.netty.NettyTransport;
+import one.whr.remote.transport.netty.TransportOptions;
+import one.whr.remote.transport.server.RpcServerInitializer;
+import one.whr.remote.transport.server.dispatcher.EventExecutorDispatcher;
+import one.whr.remote.transport.server.dispatcher.RequestDispatcher;
+import one.whr.remote.transport.server.dispatcher.ThreadPoolDispatcher;
+import one.whr.remote.transport.server.dispatcher.VirtualThreadDispatcher;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+/**
+ * 在同一个进程内通过netty local transport或127.0.0.1上的TCP连接的服务端和客户端
+ * 服务只注册到本地的ServiceProvider，服务发现使用LocalServiceDiscovery，不需要zk
+ */
+public final class LocalRpcEnvironment {
+
+    private static final InetSocketAddress SERVICE_ADDRESS = InetSocketAddress.createUnresolved("minirpc-benchmark", 9998);
+
+    private final RequestDispatcher dispatcher;
+
+    private final EventLoopGroup serverGroup;
+
+    private final EventLoopGroup clientGroup;
+
+    private final Channel serverChannel;
+
+    private final Channel clientChannel;
+
+    private final RpcClient rpcClient;
+
+    /**
+     * @param dispatcher rpc.server.dispatcher中的名称
+     * @param services   服务端提供的服务
+     */
+    public LocalRpcEnvironment(String dispatcher, RpcServiceConfig... services) throws InterruptedException {
+        this(dispatcher, (NettyTransport) null, 0, services);
+    }
+
+    /**
+     * 通过127.0.0.1上的TCP连接，测量结果包含真实的系统调用
+     *
+     * @param dispatcher         rpc.server.dispatcher中的名称
+     * @param transport          rpc.transport中的名称：nio、epoll或io-uring
+     * @param flushConsolidation 客户端和服务端一次flush最多合并的消息数，0表示不合并
+     * @param services           服务端提供的服务
+     */
+    public LocalRpcEnvironment(String dispatcher, String transport, int flushConsolidation, RpcServiceConfig... services)
+            throws InterruptedException {
+        this(dispatcher, ExtensionLoader.getExtensionLoader(NettyTransport.class).getExtension(transport), flushConsolidation, services);
+    }
+
+    private LocalRpcEnvironment(String dispatcher, NettyTransport transport, int flushConsolidation, RpcServiceConfig... services)
+            throws InterruptedException {
+        if (transport != null && !transport.isAvailable()) {
+            throw new IllegalStateException(transport.getClass().getSimpleName() + " is not available on this platform");
+        }
+        boolean tcp = transport != null;
+        for (RpcServiceConfig rpcServiceConfig : services) {
+            // 只加入本地服务表，不发布到zk
+            SingletonFactory.getInstance(ZkServiceProviderImpl.class).addService(rpcServiceConfig);
+        }
+        // 不经过ExtensionLoader，每次创建新的实例，关闭后不影响同一进程中的下一次测试
+        this.dispatcher = newDispatcher(dispatcher);
+
+        SocketAddress bindAddress = tcp ? new InetSocketAddress("127.0.0.1", 0) : new LocalAddress("minirpc-benchmark");
+        serverGroup = tcp ? transport.newEventLoopGroup(1) : new DefaultEventLoopGroup(1);
+        ServerBootstrap serverBootstrap = new ServerBootstrap()
+                .group(serverGroup)
+                .channel(tcp ? transport.serverChannelClass() : LocalServerChannel.class)
+                .childHandler(new RpcServerInitializer(this.dispatcher, flushConsolidation));
+        if (tcp) {
+            new TransportOptions().configure(serverBootstrap);
+            transport.configure(serverBootstrap, false);
+        }
+        serverChannel = serverBootstrap.bind(bindAddress).sync().channel();
+
+        clientGroup = tcp ? transport.newEventLoopGroup(1) : new DefaultEventLoopGroup(1);
+        Bootstrap clientBootstrap = new Bootstrap()
+                .group(clientGroup)
+                .channel(tcp ? transport.socketChannelClass() : LocalChannel.class)
+                .handler(new RpcClientInitializer(flushConsolidation));
+        if (tcp) {
+            new TransportOptions().configure(clientBootstrap);
+            transport.configure(clientBootstrap);
+        }
+        clientChannel = clientBootstrap.connect(serverChannel.localAddress()).sync().channel();
+
+        // RpcClient会先从ChannelProvider中取已建立的连接，这里放入local channel
+        SingletonFactory.getInstance(ChannelProvider.class).set(SERVICE_ADDRESS, clientChannel);
+        rpcClient = new RpcClient(new LocalServiceDiscovery(SERVICE_ADDRESS));
+    }
+
+    /**
+     * @param clazz         服务接口
+     * @param serviceConfig 客户端的服务配置，只使用group、version、序列化和压缩方式等
+     * @param <T>           服务类型
+     * @return 服务代理
+     */
+    public <T> T getProxy(Class<T> clazz, RpcServiceConfig serviceConfig) {
+        return new RpcClientProxy(rpcClient, serviceConfig).getProxy(clazz);
+    }
+
+    public void close() throws InterruptedException {
+        SingletonFactory.getInstance(ChannelProvider.class).remove(SERVICE_ADDRESS);
+        clientChannel.close().sync();
+        serverChannel.close().sync();
+        rpcClient.close();
+        clientGroup.shutdownGracefully().sync();
+        dispatcher.shutdown();
+        serverGroup.shutdownGracefully().sync();
+    }
+
+    private static RequestDispatcher newDispatcher(String name) {
+        switch (name) {
+            case "event-executor":
+                return new EventExecutorDispatcher();
+            case "thread-pool":
+                return new ThreadPoolDispatcher();
+            case "virtual-thread":
+                return new VirtualThreadDispatcher();
+            default:
+                throw new IllegalArgumentException("unknown dispatcher: " + name);
+        }
+    }
+}
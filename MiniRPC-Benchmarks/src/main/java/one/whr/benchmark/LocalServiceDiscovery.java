@@ -0,0 +1,23 @@
+package one.whr.benchmark;
+
+import one.whr.registry.ServiceDiscovery;
+import one.whr.remote.dto.RpcRequest;
+
+import java.net.InetSocketAddress;
+
+/**
+ * 不依赖zk的服务发现，总是返回同一个地址
+ * 该地址只作为ChannelProvider中的key，对应的channel由基准测试预先放入
+ */
+public class LocalServiceDiscovery implements ServiceDiscovery {
+    private final InetSocketAddress address;
+
+    public LocalServiceDiscovery(InetSocketAddress address) {
+        this.address = address;
+    }
+
+    @Override
+    public InetSocketAddress lookupService(RpcRequest rpcRequest) {
+        return address;
+    }
+}
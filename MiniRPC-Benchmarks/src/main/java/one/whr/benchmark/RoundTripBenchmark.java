@@ -0,0 +1,72 @@
+package one.whr.benchmark;
+
+import one.whr.config.RpcServiceConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在同一个进程内通过netty local transport完成一次完整的调用：
+ * RpcClientProxy -> RpcClient -> 编码 -> RpcServerHandler -> 服务实现 -> 解码 -> 调用方
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class RoundTripBenchmark {
+
+    @Param({"64", "1024", "16384"})
+    public int payloadSize;
+
+    @Param({"kryo", "protostuff"})
+    public String serialization;
+
+    @Param({"gzip", "lz4", "zstd", "none"})
+    public String compress;
+
+    private LocalRpcEnvironment environment;
+
+    private EchoService echoService;
+
+    private String payload;
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        environment = new LocalRpcEnvironment("event-executor", RpcServiceConfig.builder()
+                .group(BenchmarkPayloads.GROUP)
+                .version(BenchmarkPayloads.VERSION)
+                .service(new EchoServiceImpl())
+                .build());
+        echoService = environment.getProxy(EchoService.class, RpcServiceConfig.builder()
+                .group(BenchmarkPayloads.GROUP)
+                .version(BenchmarkPayloads.VERSION)
+                .serialization(serialization)
+                .compress(compress)
+                .build());
+        payload = BenchmarkPayloads.text(payloadSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        environment.close();
+    }
+
+    @Benchmark
+    public String echo() {
+        return echoService.echo(payload);
+    }
+}
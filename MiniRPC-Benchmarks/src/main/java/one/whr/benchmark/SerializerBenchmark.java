@@ -0,0 +1,61 @@
+package one.whr.benchmark;
+
+import one.whr.extension.ExtensionLoader;
+import one.whr.remote.dto.RpcRequest;
+import one.whr.serialization.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各个Serializer扩展对RpcRequest的序列化和反序列化吞吐量
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class SerializerBenchmark {
+
+    // 扩展名称，与META-INF/extensions/one.whr.serialization.Serializer中的配置一致
+    @Param({"kryo", "protostuff"})
+    public String serializer;
+
+    @Param({"64", "1024", "16384"})
+    public int payloadSize;
+
+    private Serializer instance;
+
+    private RpcRequest request;
+
+    private byte[] serialized;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        instance = ExtensionLoader.getExtensionLoader(Serializer.class).getExtension(serializer);
+        request = BenchmarkPayloads.request(payloadSize);
+        serialized = instance.serialize(request);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return instance.serialize(request);
+    }
+
+    @Benchmark
+    public RpcRequest deserialize() {
+        return instance.deserialize(serialized, RpcRequest.class);
+    }
+}
@@ -0,0 +1,32 @@
+package one.whr.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记在服务接口的方法上，覆盖@RpcReference中对该方法的调用配置
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+@Inherited
+public @interface RpcMethod {
+    /**
+     * Serialization extension name, default value is empty string which means inherit from the service
+     */
+    String serialization() default "";
+
+    /**
+     * Compress extension name, default value is empty string which means inherit from the service
+     */
+    String compress() default "";
+
+    /**
+     * Call timeout in milliseconds, default value is 0 which means inherit from the service
+     */
+    long timeout() default 0;
+}
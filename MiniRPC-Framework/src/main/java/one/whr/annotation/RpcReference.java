@@ -24,4 +24,19 @@ public @interface RpcReference {
      * Service group, default value is empty string
      */
     String group() default "";
+
+    /**
+     * Serialization extension name used for requests, default value is empty string which means rpc.serialization
+     */
+    String serialization() default "";
+
+    /**
+     * Compress extension name used for requests, default value is empty string which means rpc.compress
+     */
+    String compress() default "";
+
+    /**
+     * Call timeout in milliseconds, default value is 0 which means rpc.client.timeout
+     */
+    long timeout() default 0;
 }
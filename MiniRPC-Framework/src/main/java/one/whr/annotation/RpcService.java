@@ -24,4 +24,19 @@ public @interface RpcService {
      * Service group, default value is empty string
      */
     String group() default "";
+
+    /**
+     * Serialization extension name used for responses, default value is empty string which means the one of the request
+     */
+    String serialization() default "";
+
+    /**
+     * Compress extension name used for responses, default value is empty string which means the one of the request
+     */
+    String compress() default "";
+
+    /**
+     * Max requests of this service handled at the same time on the server, default value is 0 which means rpc.server.service.max-concurrency
+     */
+    int maxConcurrency() default 0;
 }
@@ -0,0 +1,242 @@
+package one.whr.compress;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * 把整个消息体作为一个块压缩的Compress实现的基类，适用于lz4、zstd这类按块工作的算法
+ * 压缩格式： 4B 原始长度 + 压缩数据
+ * 压缩和解压使用的中间buffer按线程复用，超过MAX_RETAINED_BUFFER_SIZE的buffer用完即丢弃
+ * 同一线程中同时只能有一个打开的压缩流和一个未读完的解压流，编解码器都满足这个条件
+ */
+public abstract class BlockCompressor implements Compress {
+
+    private static final int LENGTH_FIELD_SIZE = 4;
+
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;
+
+    // 拒绝声明的原始长度过大的数据，避免被恶意构造的消息耗尽内存
+    private static final int MAX_DECOMPRESSED_LENGTH = 64 * 1024 * 1024;
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    /**
+     * @param length 原始数据长度
+     * @return 压缩结果的最大长度
+     */
+    protected abstract int maxCompressedLength(int length);
+
+    /**
+     * @return 写入dest的压缩数据长度
+     */
+    protected abstract int compress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset, int maxDestLength);
+
+    /**
+     * 解压结果必须正好是destLength个字节
+     */
+    protected abstract void decompress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset, int destLength);
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        if (bytes == null) {
+            throw new NullPointerException("input bytes array is null");
+        }
+        Buffers buffers = BUFFERS.get();
+        byte[] dest = buffers.get(Buffers.COMPRESS_OUTPUT, LENGTH_FIELD_SIZE + maxCompressedLength(bytes.length));
+        int length = compressBlock(bytes, bytes.length, dest);
+        return Arrays.copyOf(dest, length);
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        if (bytes == null) {
+            throw new NullPointerException("input bytes array is null");
+        }
+        int rawLength = readRawLength(bytes, bytes.length);
+        byte[] result = new byte[rawLength];
+        decompress(bytes, LENGTH_FIELD_SIZE, bytes.length - LENGTH_FIELD_SIZE, result, 0, rawLength);
+        return result;
+    }
+
+    /**
+     * 写入的数据先收集到线程复用的buffer中，关闭时整体压缩写入out
+     */
+    @Override
+    public OutputStream compress(OutputStream out) {
+        return new BlockOutputStream(out, BUFFERS.get());
+    }
+
+    /**
+     * 压缩数据读入线程复用的buffer后整体解压，返回的流直接读取解压buffer，
+     * 必须在同一线程下一次调用decompress(InputStream)之前读完
+     * 先读出原始长度，压缩数据最多读入该长度对应的最大压缩长度，超过时认为数据无效
+     */
+    @Override
+    public InputStream decompress(InputStream in) throws IOException {
+        Buffers buffers = BUFFERS.get();
+        byte[] src = buffers.get(Buffers.DECOMPRESS_INPUT, INITIAL_BUFFER_SIZE);
+        int srcLength = readFully(in, src, 0, LENGTH_FIELD_SIZE);
+        int rawLength = readRawLength(src, srcLength);
+        int maxSrcLength = LENGTH_FIELD_SIZE + maxCompressedLength(rawLength);
+        int n;
+        while ((n = in.read(src, srcLength, src.length - srcLength)) > -1) {
+            srcLength += n;
+            checkSrcLength(srcLength, maxSrcLength);
+            if (srcLength == src.length) {
+                // 多留一个字节，读到maxSrcLength之后还有数据时能够发现
+                src = buffers.resize(Buffers.DECOMPRESS_INPUT, src, Math.min(src.length << 1, maxSrcLength + 1));
+            }
+        }
+        byte[] dest = buffers.get(Buffers.DECOMPRESS_OUTPUT, rawLength);
+        decompress(src, LENGTH_FIELD_SIZE, srcLength - LENGTH_FIELD_SIZE, dest, 0, rawLength);
+        return new ByteArrayInputStream(dest, 0, rawLength);
+    }
+
+    private static void checkSrcLength(int srcLength, int maxSrcLength) {
+        if (srcLength > maxSrcLength) {
+            throw new IllegalArgumentException("compressed data exceeds max length: " + maxSrcLength);
+        }
+    }
+
+    /**
+     * @return 实际读到的长度，只有in结束时才小于length
+     */
+    private static int readFully(InputStream in, byte[] dest, int offset, int length) throws IOException {
+        int read = 0;
+        int n;
+        while (read < length && (n = in.read(dest, offset + read, length - read)) > -1) {
+            read += n;
+        }
+        return read;
+    }
+
+    private int compressBlock(byte[] src, int srcLength, byte[] dest) {
+        writeInt(dest, srcLength);
+        int length = compress(src, 0, srcLength, dest, LENGTH_FIELD_SIZE, dest.length - LENGTH_FIELD_SIZE);
+        return LENGTH_FIELD_SIZE + length;
+    }
+
+    private static int readRawLength(byte[] src, int srcLength) {
+        if (srcLength < LENGTH_FIELD_SIZE) {
+            throw new IllegalArgumentException("compressed data is truncated");
+        }
+        int rawLength = ((src[0] & 0xff) << 24) | ((src[1] & 0xff) << 16) | ((src[2] & 0xff) << 8) | (src[3] & 0xff);
+        if (rawLength < 0 || rawLength > MAX_DECOMPRESSED_LENGTH) {
+            throw new IllegalArgumentException("invalid decompressed length: " + rawLength);
+        }
+        return rawLength;
+    }
+
+    private static void writeInt(byte[] dest, int value) {
+        dest[0] = (byte) (value >>> 24);
+        dest[1] = (byte) (value >>> 16);
+        dest[2] = (byte) (value >>> 8);
+        dest[3] = (byte) value;
+    }
+
+    private final class BlockOutputStream extends OutputStream {
+        private final OutputStream out;
+
+        private final Buffers buffers;
+
+        private byte[] buffer;
+
+        private int count;
+
+        private boolean closed;
+
+        private BlockOutputStream(OutputStream out, Buffers buffers) {
+            this.out = out;
+            this.buffers = buffers;
+            this.buffer = buffers.get(Buffers.COMPRESS_INPUT, INITIAL_BUFFER_SIZE);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureOpen();
+            if (count == buffer.length) {
+                buffer = buffers.grow(Buffers.COMPRESS_INPUT, buffer, count + 1);
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ensureOpen();
+            if (count + len > buffer.length) {
+                buffer = buffers.grow(Buffers.COMPRESS_INPUT, buffer, count + len);
+            }
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                byte[] dest = buffers.get(Buffers.COMPRESS_OUTPUT, LENGTH_FIELD_SIZE + maxCompressedLength(count));
+                out.write(dest, 0, compressBlock(buffer, count, dest));
+            } finally {
+                out.close();
+            }
+        }
+
+        private void ensureOpen() throws IOException {
+            if (closed) {
+                throw new IOException("stream closed");
+            }
+        }
+    }
+
+    /**
+     * 每个线程的中间buffer，压缩和解压各自使用不同的buffer，互不覆盖
+     */
+    private static final class Buffers {
+        private static final int COMPRESS_INPUT = 0;
+        private static final int COMPRESS_OUTPUT = 1;
+        private static final int DECOMPRESS_INPUT = 2;
+        private static final int DECOMPRESS_OUTPUT = 3;
+
+        private final byte[][] buffers = new byte[4][0];
+
+        /**
+         * @return 长度至少为minLength的buffer，内容未定义
+         */
+        private byte[] get(int slot, int minLength) {
+            byte[] buffer = buffers[slot];
+            if (buffer.length >= minLength) {
+                return buffer;
+            }
+            return retain(slot, new byte[minLength]);
+        }
+
+        /**
+         * @return 包含current全部内容，长度至少为minLength的buffer
+         */
+        private byte[] grow(int slot, byte[] current, int minLength) {
+            return resize(slot, current, Math.max(minLength, current.length << 1));
+        }
+
+        /**
+         * @return 包含current前length个字节，长度正好为length的buffer
+         */
+        private byte[] resize(int slot, byte[] current, int length) {
+            return retain(slot, Arrays.copyOf(current, length));
+        }
+
+        private byte[] retain(int slot, byte[] buffer) {
+            if (buffer.length <= MAX_RETAINED_BUFFER_SIZE) {
+                buffers[slot] = buffer;
+            }
+            return buffer;
+        }
+    }
+}
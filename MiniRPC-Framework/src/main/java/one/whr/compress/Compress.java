@@ -2,6 +2,12 @@ package one.whr.compress;
 
 import one.whr.annotation.SPI;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 /**
  * 压缩解压缩组件的接口
  */
@@ -11,4 +17,48 @@ public interface Compress {
     byte[] compress(byte[] bytes);
 
     byte[] decompress(byte[] bytes);
+
+    /**
+     * 返回一个包装了out的流，写入的数据被压缩后写到out中
+     * 关闭返回的流时会写完剩余的压缩数据，并且关闭out
+     * 默认实现先在内存中收集全部数据，关闭时再调用compress(byte[])，实现类应当覆盖这个方法以流式压缩
+     *
+     * @param out 压缩数据的输出流
+     * @return 压缩流
+     * @throws IOException 异常
+     */
+    default OutputStream compress(OutputStream out) throws IOException {
+        return new ByteArrayOutputStream() {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                out.write(compress(toByteArray()));
+                out.close();
+            }
+        };
+    }
+
+    /**
+     * 返回一个包装了in的流，从中读到的是解压后的数据
+     * 默认实现先把in全部读入内存，再调用decompress(byte[])，实现类应当覆盖这个方法以流式解压
+     * 实现类可以在线程内复用返回流背后的buffer，调用方必须在同一线程下一次调用这个方法之前读完返回的流
+     *
+     * @param in 压缩数据的输入流
+     * @return 解压流
+     * @throws IOException 异常
+     */
+    default InputStream decompress(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) > -1) {
+            out.write(buffer, 0, n);
+        }
+        return new ByteArrayInputStream(decompress(out.toByteArray()));
+    }
 }
@@ -4,17 +4,41 @@ import one.whr.compress.Compress;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
 
 /**
  * Gzip compressor实现
+ * GZIPOutputStream/GZIPInputStream每次都会创建新的Deflater/Inflater，它们持有native内存，创建和回收都比较昂贵，
+ * 因此这里自己写gzip的头部和尾部，每个线程复用一组Deflater、Inflater和buffer
+ * 同一线程中同时只能有一个打开的压缩流和一个未读完的解压流，编解码器都满足这个条件
  */
 public class GzipCompressor implements Compress {
 
     private static final int BUFFER_SIZE = 1024 * 4;
 
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    // 与GZIPOutputStream写出的头部相同：magic，压缩方法，flags，mtime，xfl，os
+    private static final byte[] HEADER = {(byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private static final int TRAILER_SIZE = 8;
+
+    // 头部flags
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private static final ThreadLocal<GzipContext> CONTEXT = ThreadLocal.withInitial(GzipContext::new);
+
     /**
      * 将bytes压缩
      *
@@ -26,15 +50,25 @@ public class GzipCompressor implements Compress {
         if (bytes == null) {
             throw new NullPointerException("input bytes array is null");
         }
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream();
-             GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + HEADER.length + TRAILER_SIZE);
+        try (OutputStream gzip = compress(out)) {
             gzip.write(bytes);
-            gzip.flush();
-            gzip.finish();
-            return out.toByteArray();
         } catch (IOException e) {
             throw new RuntimeException("gzip compress error", e);
         }
+        return out.toByteArray();
+    }
+
+    /**
+     * 流式压缩，压缩后的数据直接写入out
+     *
+     * @param out 压缩数据的输出流
+     * @return gzip输出流
+     * @throws IOException 写入gzip头失败
+     */
+    @Override
+    public OutputStream compress(OutputStream out) throws IOException {
+        return new GzipOutputStream(out, CONTEXT.get());
     }
 
     /**
@@ -46,8 +80,8 @@ public class GzipCompressor implements Compress {
         if (bytes == null) {
             throw new NullPointerException("input bytes array is null");
         }
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream();
-             GZIPInputStream gunzip = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 2);
+             InputStream gunzip = decompress(new ByteArrayInputStream(bytes))) {
             // gunzip read from bytes through a ByteArrayInputStream
 
             byte[] buffer = new byte[BUFFER_SIZE];
@@ -62,4 +96,258 @@ public class GzipCompressor implements Compress {
             throw new RuntimeException("gzip decompress error", e);
         }
     }
+
+    /**
+     * 流式解压，直接从in中读取压缩数据
+     *
+     * @param in 压缩数据的输入流
+     * @return gzip输入流
+     * @throws IOException 读取gzip头失败
+     */
+    @Override
+    public InputStream decompress(InputStream in) throws IOException {
+        return new GzipInputStream(in, CONTEXT.get());
+    }
+
+    /**
+     * 每个线程复用的压缩和解压状态，压缩和解压分开，互不影响
+     */
+    private static final class GzipContext {
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+        private final Inflater inflater = new Inflater(true);
+
+        private final CRC32 deflateCrc = new CRC32();
+
+        private final CRC32 inflateCrc = new CRC32();
+
+        private final byte[] deflateBuffer = new byte[BUFFER_SIZE];
+
+        private final byte[] inflateBuffer = new byte[BUFFER_SIZE];
+    }
+
+    private static final class GzipOutputStream extends OutputStream {
+        private final OutputStream out;
+
+        private final Deflater deflater;
+
+        private final CRC32 crc;
+
+        private final byte[] buffer;
+
+        private boolean closed;
+
+        private GzipOutputStream(OutputStream out, GzipContext context) throws IOException {
+            this.out = out;
+            this.deflater = context.deflater;
+            this.crc = context.deflateCrc;
+            this.buffer = context.deflateBuffer;
+            deflater.reset();
+            crc.reset();
+            out.write(HEADER);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("stream closed");
+            }
+            if (len == 0) {
+                return;
+            }
+            crc.update(b, off, len);
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+        }
+
+        /**
+         * 写完剩余的压缩数据和gzip尾部，然后关闭out
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate();
+                }
+                writeIntLE(buffer, 0, (int) crc.getValue());
+                writeIntLE(buffer, 4, (int) deflater.getBytesRead());
+                out.write(buffer, 0, TRAILER_SIZE);
+            } finally {
+                // 释放对调用方数组的引用
+                deflater.reset();
+                out.close();
+            }
+        }
+
+        private void deflate() throws IOException {
+            int n = deflater.deflate(buffer, 0, buffer.length);
+            if (n > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+
+        private static void writeIntLE(byte[] b, int off, int value) {
+            b[off] = (byte) value;
+            b[off + 1] = (byte) (value >> 8);
+            b[off + 2] = (byte) (value >> 16);
+            b[off + 3] = (byte) (value >> 24);
+        }
+    }
+
+    private static final class GzipInputStream extends InputStream {
+        private final InputStream in;
+
+        private final Inflater inflater;
+
+        private final CRC32 crc;
+
+        private final byte[] buffer;
+
+        // buffer中有效数据的长度
+        private int filled;
+
+        private boolean eof;
+
+        private GzipInputStream(InputStream in, GzipContext context) throws IOException {
+            this.in = in;
+            this.inflater = context.inflater;
+            this.crc = context.inflateCrc;
+            this.buffer = context.inflateBuffer;
+            inflater.reset();
+            crc.reset();
+            readHeader();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (eof) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            try {
+                while (true) {
+                    int n = inflater.inflate(b, off, len);
+                    if (n > 0) {
+                        crc.update(b, off, n);
+                        return n;
+                    }
+                    if (inflater.finished()) {
+                        readTrailer();
+                        eof = true;
+                        return -1;
+                    }
+                    if (inflater.needsDictionary()) {
+                        throw new ZipException("gzip stream requires a preset dictionary");
+                    }
+                    if (inflater.needsInput()) {
+                        fill();
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage() != null ? e.getMessage() : "invalid gzip data format");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private void fill() throws IOException {
+            filled = in.read(buffer, 0, buffer.length);
+            if (filled == -1) {
+                filled = 0;
+                throw new EOFException("unexpected end of gzip stream");
+            }
+            inflater.setInput(buffer, 0, filled);
+        }
+
+        private void readHeader() throws IOException {
+            if (readUShort() != GZIP_MAGIC) {
+                throw new ZipException("not in gzip format");
+            }
+            if (readUByte() != Deflater.DEFLATED) {
+                throw new ZipException("unsupported compression method");
+            }
+            int flags = readUByte();
+            skip(6); // mtime, xfl, os
+            if ((flags & FEXTRA) == FEXTRA) {
+                skip(readUShort());
+            }
+            if ((flags & FNAME) == FNAME) {
+                skipZeroTerminated();
+            }
+            if ((flags & FCOMMENT) == FCOMMENT) {
+                skipZeroTerminated();
+            }
+            if ((flags & FHCRC) == FHCRC) {
+                skip(2);
+            }
+        }
+
+        /**
+         * 尾部的前一部分可能已经被读入buffer，排在inflater剩余数据的位置
+         */
+        private void readTrailer() throws IOException {
+            int remaining = inflater.getRemaining();
+            int start = filled - remaining;
+            byte[] trailer = new byte[TRAILER_SIZE];
+            int n = Math.min(remaining, TRAILER_SIZE);
+            System.arraycopy(buffer, start, trailer, 0, n);
+            for (; n < TRAILER_SIZE; n++) {
+                trailer[n] = (byte) readUByte();
+            }
+            if (readIntLE(trailer, 0) != (int) crc.getValue() || readIntLE(trailer, 4) != (int) inflater.getBytesWritten()) {
+                throw new ZipException("corrupt gzip trailer");
+            }
+        }
+
+        private int readUByte() throws IOException {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("unexpected end of gzip stream");
+            }
+            return b;
+        }
+
+        private int readUShort() throws IOException {
+            return readUByte() | (readUByte() << 8);
+        }
+
+        private void skip(int n) throws IOException {
+            for (int i = 0; i < n; i++) {
+                readUByte();
+            }
+        }
+
+        private void skipZeroTerminated() throws IOException {
+            while (readUByte() != 0) {
+                // skip
+            }
+        }
+
+        private static int readIntLE(byte[] b, int off) {
+            return (b[off] & 0xff) | ((b[off + 1] & 0xff) << 8) | ((b[off + 2] & 0xff) << 16) | ((b[off + 3] & 0xff) << 24);
+        }
+    }
 }
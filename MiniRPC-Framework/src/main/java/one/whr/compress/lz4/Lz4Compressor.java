@@ -0,0 +1,37 @@
+package one.whr.compress.lz4;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import one.whr.compress.BlockCompressor;
+
+/**
+ * LZ4 compressor实现，压缩率不如gzip，但压缩和解压速度快很多
+ * lz4-java的压缩器和解压器是无状态、线程安全的，可复用的只有中间buffer，由BlockCompressor按线程管理
+ */
+public class Lz4Compressor extends BlockCompressor {
+
+    private static final LZ4Factory FACTORY = LZ4Factory.fastestInstance();
+
+    private final LZ4Compressor compressor = FACTORY.fastCompressor();
+
+    private final LZ4SafeDecompressor decompressor = FACTORY.safeDecompressor();
+
+    @Override
+    protected int maxCompressedLength(int length) {
+        return compressor.maxCompressedLength(length);
+    }
+
+    @Override
+    protected int compress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset, int maxDestLength) {
+        return compressor.compress(src, srcOffset, srcLength, dest, destOffset, maxDestLength);
+    }
+
+    @Override
+    protected void decompress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset, int destLength) {
+        int length = decompressor.decompress(src, srcOffset, srcLength, dest, destOffset, destLength);
+        if (length != destLength) {
+            throw new IllegalArgumentException("lz4 decompressed length mismatch, expected " + destLength + " but was " + length);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package one.whr.compress.none;
+
+import one.whr.compress.Compress;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 不压缩，数据原样通过
+ * 用于小消息，gzip的头部和CPU开销对它们得不偿失
+ */
+public class NoneCompressor implements Compress {
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        if (bytes == null) {
+            throw new NullPointerException("input bytes array is null");
+        }
+        return bytes;
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        if (bytes == null) {
+            throw new NullPointerException("input bytes array is null");
+        }
+        return bytes;
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out) {
+        return out;
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) {
+        return in;
+    }
+}
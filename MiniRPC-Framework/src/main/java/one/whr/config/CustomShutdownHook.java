@@ -22,8 +22,11 @@ public class CustomShutdownHook {
 
     /**
      * clear registry on zk when shutting down
+     * 先从zk注销，客户端不再选择这个服务端，然后排空已有的连接，最后关闭线程池
+     *
+     * @param rpcServer 要关闭的服务端
      */
-    public void clearAll() {
+    public void clearAll(RpcServer rpcServer) {
         log.info("add shutdown hook for clear all");
         // get current runtime and add shutdown hook
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -32,7 +35,11 @@ public class CustomShutdownHook {
                 CuratorUtils.clearRegistry(CuratorUtils.getZkClient(), inetSocketAddress);
             } catch (UnknownHostException e) {
                 log.error("Unable to find localhost address");
+            } catch (RuntimeException e) {
+                // zk不可用时仍然排空连接
+                log.error("Fail to clear registry", e);
             }
+            rpcServer.shutdown();
             ThreadPoolFactoryUtil.shutdownAllThreadPool();
         }));
     }
@@ -0,0 +1,100 @@
+package one.whr.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import one.whr.annotation.RpcMethod;
+import one.whr.enums.CompressTypeEnum;
+import one.whr.enums.RpcConfigEnum;
+import one.whr.enums.SerializationEnum;
+import one.whr.utils.MethodIdUtil;
+import one.whr.utils.PropertiesUtils;
+import one.whr.utils.StringUtil;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 客户端对单个方法的调用配置，由方法上的@RpcMethod和服务的RpcServiceConfig合并得到
+ * 代理在第一次调用某个方法时解析并缓存，避免每次调用都读取注解和反射获取方法信息
+ */
+@AllArgsConstructor
+@Getter
+@ToString
+public class RpcMethodConfig {
+    private static final int DEFAULT_TIMEOUT_MILLIS = 5000;
+
+    // 请求中的接口名和方法信息，getParameterTypes每次都会复制数组，这里只取一次
+    private final String interfaceName;
+
+    private final String methodName;
+
+    private final Class<?>[] paramTypes;
+
+    private final Class<?> returnType;
+
+    // 序列化方式，0表示使用客户端的默认配置
+    private final byte codec;
+
+    // 压缩方式，0表示使用客户端的默认配置
+    private final byte compress;
+
+    // 调用超时时间(ms)，不大于0表示不限制
+    private final long timeout;
+
+    // 方法的返回值是CompletableFuture或CompletionStage，调用不等待响应，直接返回future
+    private final boolean async;
+
+    // 方法签名的hash，0表示与接口中其他方法冲突，按方法名调用
+    private final int methodId;
+
+    // interfaceName + group + version，查找服务地址时使用
+    private final String rpcServiceName;
+
+    /**
+     * 方法上的配置优先于服务上的配置，都没有配置超时时间时使用rpc.client.timeout
+     *
+     * @param serviceInterface 代理的服务接口，method可能声明在它的父接口中
+     * @param method           接口方法
+     * @param serviceConfig    服务配置
+     * @return 方法的调用配置
+     */
+    public static RpcMethodConfig of(Class<?> serviceInterface, Method method, RpcServiceConfig serviceConfig) {
+        RpcMethod rpcMethod = method.getAnnotation(RpcMethod.class);
+        String serialization = serviceConfig.getSerialization();
+        String compress = serviceConfig.getCompress();
+        long timeout = serviceConfig.getTimeout();
+        if (rpcMethod != null) {
+            if (!StringUtil.isBlank(rpcMethod.serialization())) {
+                serialization = rpcMethod.serialization();
+            }
+            if (!StringUtil.isBlank(rpcMethod.compress())) {
+                compress = rpcMethod.compress();
+            }
+            if (rpcMethod.timeout() > 0) {
+                timeout = rpcMethod.timeout();
+            }
+        }
+        if (timeout <= 0) {
+            timeout = PropertiesUtils.getRpcIntProperty(RpcConfigEnum.CLIENT_TIMEOUT, DEFAULT_TIMEOUT_MILLIS);
+        }
+        // 继承自父接口的方法同样发给代理的服务接口，服务端只注册了这个接口
+        return new RpcMethodConfig(
+                serviceInterface.getName(),
+                method.getName(),
+                method.getParameterTypes(),
+                method.getReturnType(),
+                StringUtil.isBlank(serialization) ? 0 : SerializationEnum.getCode(serialization),
+                StringUtil.isBlank(compress) ? 0 : CompressTypeEnum.getCode(compress),
+                timeout,
+                isAsync(method),
+                MethodIdUtil.uniqueMethodId(serviceInterface, method),
+                serviceInterface.getName() + serviceConfig.getGroup() + serviceConfig.getVersion());
+    }
+
+    private static boolean isAsync(Method method) {
+        Class<?> returnType = method.getReturnType();
+        return returnType == CompletableFuture.class || returnType == CompletionStage.class;
+    }
+}
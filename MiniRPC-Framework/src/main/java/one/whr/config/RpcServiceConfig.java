@@ -23,6 +23,17 @@ public class RpcServiceConfig {
 
     private Object service;
 
+    // 序列化和压缩方式的扩展名称，为空时由调用方或全局配置决定
+    private String serialization;
+
+    private String compress;
+
+    // 客户端调用超时时间(ms)，0表示使用rpc.client.timeout
+    private long timeout;
+
+    // 服务端同时处理的请求数上限，0表示使用rpc.server.service.max-concurrency
+    private int maxConcurrency;
+
     public String getRpcServiceName() {
         return this.getServiceName() + this.getGroup() + this.getVersion();
     }
@@ -6,7 +6,10 @@ import lombok.Getter;
 @AllArgsConstructor
 @Getter
 public enum CompressTypeEnum {
-    GZIP((byte) 0x01, "gzip");
+    GZIP((byte) 0x01, "gzip"),
+    NONE((byte) 0x02, "none"),
+    LZ4((byte) 0x03, "lz4"),
+    ZSTD((byte) 0x04, "zstd");
 
     private final byte code;
     private final String name;
@@ -19,4 +22,13 @@ public enum CompressTypeEnum {
         }
         return null;
     }
+
+    public static byte getCode(String name) {
+        for (CompressTypeEnum c : CompressTypeEnum.values()) {
+            if (c.getName().equals(name)) {
+                return c.code;
+            }
+        }
+        throw new IllegalArgumentException("Unknown compress type: " + name);
+    }
 }
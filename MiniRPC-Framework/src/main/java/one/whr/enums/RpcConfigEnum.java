@@ -7,7 +7,53 @@ import lombok.Getter;
 @Getter
 public enum RpcConfigEnum {
     RPC_CONFIG_PATH("rpc.properties"),
-    ZK_ADDRESS("rpc.zookeeper.address");
+    ZK_ADDRESS("rpc.zookeeper.address"),
+    SERIALIZATION("rpc.serialization"),
+    COMPRESS("rpc.compress"),
+    COMPRESS_THRESHOLD("rpc.compress.threshold"),
+    COMPRESS_ADAPTIVE("rpc.compress.adaptive"),
+    ZSTD_LEVEL("rpc.compress.zstd.level"),
+    ZSTD_DICTIONARY("rpc.compress.zstd.dictionary"),
+    CLIENT_TIMEOUT("rpc.client.timeout"),
+    CLIENT_CALLBACK_THREADS("rpc.client.callback-threads"),
+    CLIENT_PROXY("rpc.client.proxy"),
+    CLIENT_CONNECTIONS("rpc.client.connections"),
+    CLIENT_CHANNEL_SELECTION("rpc.client.channel-selection"),
+    CLIENT_MAX_CONSECUTIVE_TIMEOUTS("rpc.client.max-consecutive-timeouts"),
+    CLIENT_HEARTBEAT_INTERVAL("rpc.client.heartbeat-interval"),
+    CLIENT_WARMUP("rpc.client.warmup"),
+    CLIENT_CONNECT_TIMEOUT("rpc.client.connect-timeout"),
+    CLIENT_IO_THREADS("rpc.client.io-threads"),
+    CLIENT_MAX_IN_FLIGHT("rpc.client.max-in-flight"),
+    CLIENT_MAX_QUEUED("rpc.client.max-queued"),
+    CLIENT_OVERLOAD_RETRIES("rpc.client.overload-retries"),
+    TRANSPORT("rpc.transport"),
+    TRANSPORT_EPOLL_MODE("rpc.transport.epoll.mode"),
+    TRANSPORT_TCP_QUICKACK("rpc.transport.tcp-quickack"),
+    TRANSPORT_FLUSH_CONSOLIDATION("rpc.transport.flush-consolidation"),
+    TRANSPORT_ALLOCATOR("rpc.transport.allocator"),
+    TRANSPORT_PREFER_DIRECT("rpc.transport.prefer-direct"),
+    TRANSPORT_RECEIVE_BUFFER_MIN("rpc.transport.receive-buffer.min"),
+    TRANSPORT_RECEIVE_BUFFER_INITIAL("rpc.transport.receive-buffer.initial"),
+    TRANSPORT_RECEIVE_BUFFER_MAX("rpc.transport.receive-buffer.max"),
+    TRANSPORT_WRITE_BUFFER_LOW("rpc.transport.write-buffer.low"),
+    TRANSPORT_WRITE_BUFFER_HIGH("rpc.transport.write-buffer.high"),
+    TRANSPORT_TCP_NODELAY("rpc.transport.tcp-nodelay"),
+    TRANSPORT_SO_SNDBUF("rpc.transport.so-sndbuf"),
+    TRANSPORT_SO_RCVBUF("rpc.transport.so-rcvbuf"),
+    KRYO_POOL_SIZE("rpc.serialization.kryo.pool-size"),
+    KRYO_REGISTRATIONS("rpc.serialization.kryo.registrations"),
+    SERVER_ACCEPTORS("rpc.server.acceptors"),
+    SERVER_BACKLOG("rpc.server.backlog"),
+    SERVER_IO_THREADS("rpc.server.io-threads"),
+    SERVER_DISPATCHER("rpc.server.dispatcher"),
+    SERVER_DISPATCHER_THREADS("rpc.server.dispatcher.threads"),
+    SERVER_DISPATCHER_QUEUE_SIZE("rpc.server.dispatcher.queue-size"),
+    SERVICE_MAX_CONCURRENCY("rpc.server.service.max-concurrency"),
+    SERVER_MAX_CONCURRENCY("rpc.server.max-concurrency"),
+    SERVER_LIMITER("rpc.server.limiter"),
+    SERVER_LIMITER_MAX_LIMIT("rpc.server.limiter.max-limit"),
+    SERVER_SHUTDOWN_TIMEOUT("rpc.server.shutdown.timeout");
 
     private final String propertyValue;
 }
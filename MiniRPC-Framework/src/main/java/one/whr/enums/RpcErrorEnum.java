@@ -11,8 +11,13 @@ public enum RpcErrorEnum {
     CLIENT_CONNECT_SERVER_FAILURE("client fails to connect to server"),
     SERVICE_INVOCATION_FAILURE("fail to invoke service"),
     SERVICE_NOT_FOUND("service not found"),
+    METHOD_NOT_FOUND("method not found"),
     SERVICE_NOT_IMPLEMENT_ANY_INTERFACE("service not implementing any interface"),
-    REQUEST_NOT_MATCH_RESPONSE("response result mismatch");
+    REQUEST_NOT_MATCH_RESPONSE("response result mismatch"),
+    CONNECTION_CLOSED("connection closed before response received"),
+    REQUEST_TIMEOUT("request timed out"),
+    CLIENT_REQUEST_REJECTED("too many requests waiting on the connection"),
+    SERVER_OVERLOADED("server overloaded, request rejected");
 
     private final String message;
 }
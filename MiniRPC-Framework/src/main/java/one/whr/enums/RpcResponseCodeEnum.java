@@ -9,7 +9,9 @@ import lombok.ToString;
 @ToString
 public enum RpcResponseCodeEnum {
     SUCCESS(200, "Remote call successful"),
-    FAIL(500, "Remote call failed");
+    FAIL(500, "Remote call failed"),
+    // 服务端过载，请求没有被处理，客户端可以换一个节点重试
+    OVERLOADED(503, "Server overloaded, request rejected");
 
     private final int code;
     private final String message;
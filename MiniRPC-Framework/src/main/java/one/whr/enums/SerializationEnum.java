@@ -21,4 +21,13 @@ public enum SerializationEnum {
         }
         return null;
     }
+
+    public static byte getCode(String name) {
+        for (SerializationEnum c : SerializationEnum.values()) {
+            if (c.getName().equals(name)) {
+                return c.code;
+            }
+        }
+        throw new IllegalArgumentException("Unknown serialization: " + name);
+    }
 }
@@ -1,5 +1,7 @@
 package one.whr.loadbalance;
 
+import one.whr.registry.Endpoint;
+import one.whr.registry.ServiceSnapshot;
 import one.whr.remote.dto.RpcRequest;
 import one.whr.utils.CollectionUtil;
 
@@ -26,5 +28,31 @@ public abstract class AbstractLoadBalancer implements LoadBalance {
         return doSelect(serviceUrlList, rpcRequest);
     }
 
+    /**
+     * 与selectServiceAddress相同，只有一个地址时直接返回
+     *
+     * @param snapshot   服务的地址快照
+     * @param rpcRequest RPC请求
+     * @return 服务地址
+     */
+    @Override
+    public Endpoint select(ServiceSnapshot snapshot, RpcRequest rpcRequest) {
+        List<Endpoint> endpoints = snapshot.getEndpoints();
+        if (endpoints.isEmpty()) {
+            return null;
+        }
+        if (endpoints.size() == 1) {
+            return endpoints.get(0);
+        }
+        return doSelect(snapshot, rpcRequest);
+    }
+
     protected abstract String doSelect(List<String> serviceAddresses, RpcRequest rpcRequest);
+
+    /**
+     * 默认按地址字符串选择，子类可以直接在快照上选择
+     */
+    protected Endpoint doSelect(ServiceSnapshot snapshot, RpcRequest rpcRequest) {
+        return snapshot.getEndpoint(doSelect(snapshot.getUrls(), rpcRequest));
+    }
 }
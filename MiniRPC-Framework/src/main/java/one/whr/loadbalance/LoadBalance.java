@@ -1,6 +1,8 @@
 package one.whr.loadbalance;
 
 import one.whr.annotation.SPI;
+import one.whr.registry.Endpoint;
+import one.whr.registry.ServiceSnapshot;
 import one.whr.remote.dto.RpcRequest;
 
 import java.util.List;
@@ -9,4 +11,16 @@ import java.util.List;
 public interface LoadBalance {
     // Choose one worker from a list of existing service addresses
     String selectServiceAddress(List<String> serviceUrlList, RpcRequest rpcRequest);
+
+    /**
+     * 从服务的地址快照中选择，快照不可变，实现可以按快照的version缓存计算出的状态
+     *
+     * @param snapshot   服务的地址快照
+     * @param rpcRequest RPC请求
+     * @return 选中的地址，快照为空时返回null
+     */
+    default Endpoint select(ServiceSnapshot snapshot, RpcRequest rpcRequest) {
+        String url = selectServiceAddress(snapshot.getUrls(), rpcRequest);
+        return url == null ? null : snapshot.getEndpoint(url);
+    }
 }
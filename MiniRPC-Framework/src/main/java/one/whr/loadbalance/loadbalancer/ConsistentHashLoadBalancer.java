@@ -2,6 +2,8 @@ package one.whr.loadbalance.loadbalancer;
 
 import lombok.extern.slf4j.Slf4j;
 import one.whr.loadbalance.AbstractLoadBalancer;
+import one.whr.registry.Endpoint;
+import one.whr.registry.ServiceSnapshot;
 import one.whr.remote.dto.RpcRequest;
 
 import java.nio.charset.StandardCharsets;
@@ -18,6 +20,9 @@ public class ConsistentHashLoadBalancer extends AbstractLoadBalancer {
     // store selectors for different services
     private final ConcurrentHashMap<String, ConsistentHashSelector> selectors = new ConcurrentHashMap<>();
 
+    // 按地址快照建立的selector，快照的version变化时重建
+    private final ConcurrentHashMap<String, ConsistentHashSelector> snapshotSelectors = new ConcurrentHashMap<>();
+
     /**
      * 通过RPC请求中的service名称选择selector进行地址选择
      *
@@ -31,7 +36,7 @@ public class ConsistentHashLoadBalancer extends AbstractLoadBalancer {
         String rpcServiceName = rpcRequest.getRpcServiceName();
         ConsistentHashSelector selector = selectors.get(rpcServiceName);
 
-        if (selector == null || selector.identityHashCode != identityHashCode) {
+        if (selector == null || selector.version != identityHashCode) {
             selectors.put(rpcServiceName, new ConsistentHashSelector(serviceAddresses, 160, identityHashCode));
             selector = selectors.get(rpcServiceName);
         }
@@ -39,6 +44,24 @@ public class ConsistentHashLoadBalancer extends AbstractLoadBalancer {
 
     }
 
+    /**
+     * 哈希环只在快照变化时重建，version全局唯一，不会像identityHashCode一样冲突
+     *
+     * @param snapshot   服务的地址快照
+     * @param rpcRequest RPC 请求
+     * @return 服务地址
+     */
+    @Override
+    protected Endpoint doSelect(ServiceSnapshot snapshot, RpcRequest rpcRequest) {
+        String rpcServiceName = rpcRequest.getRpcServiceName();
+        ConsistentHashSelector selector = snapshotSelectors.get(rpcServiceName);
+        if (selector == null || selector.version != snapshot.getVersion()) {
+            selector = new ConsistentHashSelector(snapshot.getUrls(), 160, snapshot.getVersion());
+            snapshotSelectors.put(rpcServiceName, selector);
+        }
+        return snapshot.getEndpoint(selector.select(rpcServiceName + Arrays.stream(rpcRequest.getParameters())));
+    }
+
     /*
      * 静态内部类
      * 1. 在外部创建静态内部类实例不需要创建外部类的实例
@@ -54,16 +77,16 @@ public class ConsistentHashLoadBalancer extends AbstractLoadBalancer {
     static class ConsistentHashSelector {
         // store workers for the service
         private final TreeMap<Long, String> virtualInvokers;
-        private final int identityHashCode; // 服务对应的identityHashCode
+        private final long version; // 服务对应的identityHashCode或快照的version
 
         /**
          * @param serviceAddresses 服务地址列表
          * @param replicaNumber    replica数量
-         * @param identityHashCode identity哈希
+         * @param version          identity哈希或快照的version
          */
-        ConsistentHashSelector(List<String> serviceAddresses, int replicaNumber, int identityHashCode) {
+        ConsistentHashSelector(List<String> serviceAddresses, int replicaNumber, long version) {
             this.virtualInvokers = new TreeMap<>();
-            this.identityHashCode = identityHashCode;
+            this.version = version;
 
             for (String invoker : serviceAddresses) {
                 for (int i = 0; i < replicaNumber / 4; i++) {
@@ -1,15 +1,22 @@
 package one.whr.loadbalance.loadbalancer;
 
 import one.whr.loadbalance.AbstractLoadBalancer;
+import one.whr.registry.Endpoint;
+import one.whr.registry.ServiceSnapshot;
 import one.whr.remote.dto.RpcRequest;
 
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class RandomLoadBalancer extends AbstractLoadBalancer {
     @Override
     protected String doSelect(List<String> serviceAddresses, RpcRequest rpcRequest) {
-        Random random = new Random();
-        return serviceAddresses.get(random.nextInt(serviceAddresses.size()));
+        return serviceAddresses.get(ThreadLocalRandom.current().nextInt(serviceAddresses.size()));
+    }
+
+    @Override
+    protected Endpoint doSelect(ServiceSnapshot snapshot, RpcRequest rpcRequest) {
+        List<Endpoint> endpoints = snapshot.getEndpoints();
+        return endpoints.get(ThreadLocalRandom.current().nextInt(endpoints.size()));
     }
 }
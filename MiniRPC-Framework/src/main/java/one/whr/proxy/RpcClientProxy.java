@@ -1,7 +1,9 @@
 package one.whr.proxy;
 
 import lombok.extern.slf4j.Slf4j;
+import one.whr.config.RpcMethodConfig;
 import one.whr.config.RpcServiceConfig;
+import one.whr.enums.RpcConfigEnum;
 import one.whr.enums.RpcErrorEnum;
 import one.whr.enums.RpcResponseCodeEnum;
 import one.whr.exception.RpcException;
@@ -9,13 +11,18 @@ import one.whr.remote.dto.RpcRequest;
 import one.whr.remote.dto.RpcResponse;
 import one.whr.remote.transport.RpcRequestTransport;
 import one.whr.remote.transport.client.RpcClient;
+import one.whr.utils.PropertiesUtils;
 
+import java.lang.reflect.Array;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.UUID;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 
 /**
@@ -24,6 +31,10 @@ import java.util.concurrent.ExecutionException;
 @Slf4j
 public class RpcClientProxy implements InvocationHandler {
 
+    private static final String JDK_PROXY = "jdk";
+
+    private static final String STUB_PROXY = "stub";
+
     // Used for sending requests to the server
     // 客户端将实现这个接口，用于向服务端发送RPC请求
     private final RpcRequestTransport rpcRequestTransport;
@@ -31,14 +42,27 @@ public class RpcClientProxy implements InvocationHandler {
     // service config
     private final RpcServiceConfig rpcServiceConfig;
 
+    // 每个方法的调用配置，在第一次调用时解析，一个RpcClientProxy只代理rpcServiceConfig对应的一个服务接口
+    private final Map<Method, RpcMethodConfig> methodConfigs = new ConcurrentHashMap<>();
+
+    // 异步调用的结果在这个线程池中完成，为null时直接在收到响应的EventLoop中完成
+    private final Executor callbackExecutor;
+
     public RpcClientProxy(RpcRequestTransport rpcRequestTransport, RpcServiceConfig serviceConfig) {
+        this(rpcRequestTransport, serviceConfig,
+                rpcRequestTransport instanceof RpcClient ? ((RpcClient) rpcRequestTransport).getCallbackExecutor() : null);
+    }
+
+    public RpcClientProxy(RpcRequestTransport rpcRequestTransport, RpcServiceConfig serviceConfig, Executor callbackExecutor) {
         this.rpcRequestTransport = rpcRequestTransport;
         this.rpcServiceConfig = serviceConfig;
+        this.callbackExecutor = callbackExecutor;
     }
 
 
     /**
      * 根据传入的类生产该类的代理类
+     * rpc.client.proxy为stub时使用生成的stub类，否则使用JDK动态代理
      *
      * @param clazz 服务端注册的服务类
      * @param <T>   类型标记
@@ -46,9 +70,29 @@ public class RpcClientProxy implements InvocationHandler {
      */
     @SuppressWarnings("unchecked")
     public <T> T getProxy(Class<T> clazz) {
+        if (STUB_PROXY.equals(PropertiesUtils.getRpcProperty(RpcConfigEnum.CLIENT_PROXY, JDK_PROXY))) {
+            try {
+                return (T) getStub(clazz);
+            } catch (RuntimeException | ReflectiveOperationException | LinkageError e) {
+                log.warn("fail to generate stub for [{}], use jdk proxy instead", clazz.getName(), e);
+            }
+        }
         return (T) Proxy.newProxyInstance(clazz.getClassLoader(), new Class<?>[]{clazz}, this);
     }
 
+    /**
+     * stub中的方法按序号调用，调用配置在创建stub时全部解析好
+     */
+    private Object getStub(Class<?> clazz) throws ReflectiveOperationException {
+        RpcStubGenerator.StubClass stubClass = RpcStubGenerator.getStubClass(clazz);
+        Method[] methods = stubClass.getMethods();
+        RpcMethodConfig[] stubMethodConfigs = new RpcMethodConfig[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            stubMethodConfigs[i] = methodConfigs.computeIfAbsent(methods[i], m -> RpcMethodConfig.of(clazz, m, rpcServiceConfig));
+        }
+        return stubClass.newInstance((methodIndex, args) -> invoke(stubMethodConfigs[methodIndex], args));
+    }
+
     /**
      * 调用时的逻辑
      *
@@ -68,36 +112,112 @@ public class RpcClientProxy implements InvocationHandler {
      * @throws ExecutionException   异常
      * @throws InterruptedException 异常
      */
-    @SuppressWarnings("unchecked")
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws ExecutionException, InterruptedException {
+        // 代理类只实现了getProxy传入的服务接口
+        RpcMethodConfig methodConfig = methodConfigs.computeIfAbsent(method,
+                m -> RpcMethodConfig.of(proxy.getClass().getInterfaces()[0], m, rpcServiceConfig));
+        return invoke(methodConfig, args);
+    }
+
+    /**
+     * JDK动态代理和stub共用的调用逻辑
+     *
+     * @param methodConfig 方法的调用配置
+     * @param args         调用参数
+     * @return RPC调用响应的数据部分，异步调用时是future
+     * @throws ExecutionException   异常
+     * @throws InterruptedException 异常
+     */
+    @SuppressWarnings("unchecked")
+    private Object invoke(RpcMethodConfig methodConfig, Object[] args) throws ExecutionException, InterruptedException {
 
-        log.info("Method invoked: [{}]", method.getName());  // 日志打印
+        log.debug("Method invoked: [{}]", methodConfig.getMethodName());  // 日志打印
 
+        // 有方法ID时不再发送方法名和参数类型，服务端按ID查找方法
+        boolean byName = methodConfig.getMethodId() == 0;
         RpcRequest rpcRequest = RpcRequest.builder()
-                .methodName(method.getName())
+                .methodId(methodConfig.getMethodId())
+                .methodName(byName ? methodConfig.getMethodName() : null)
                 .parameters(args)
-                .interfaceName(method.getDeclaringClass().getName())
-                .paramTypes(method.getParameterTypes())
-                .requestId(UUID.randomUUID().toString())  // 生成一个UUID
+                .interfaceName(methodConfig.getInterfaceName())
+                .paramTypes(byName ? methodConfig.getParamTypes() : null)
                 .group(rpcServiceConfig.getGroup())  // 对应的group
                 .version(rpcServiceConfig.getVersion())  // 对应的version
+                .codec(methodConfig.getCodec())
+                .compress(methodConfig.getCompress())
+                .timeout(methodConfig.getTimeout())
+                .rpcServiceName(methodConfig.getRpcServiceName())
                 .build();
 
+        // 返回future的方法，以及在RpcContext.async中的调用，都不等待响应
+        if (methodConfig.isAsync()) {
+            return invokeAsync(rpcRequest);
+        }
+        if (RpcContext.isAsync()) {
+            RpcContext.offer(invokeAsync(rpcRequest));
+            return defaultValue(methodConfig.getReturnType());
+        }
+
         RpcResponse<Object> rpcResponse = null;
 
         if (rpcRequestTransport instanceof RpcClient) {
             // 异步获取请求结果
             CompletableFuture<RpcResponse<Object>> future =
                     (CompletableFuture<RpcResponse<Object>>) rpcRequestTransport.sendRpcRequest(rpcRequest);
-            rpcResponse = future.get();
+            try {
+                rpcResponse = future.get();
+            } catch (ExecutionException e) {
+                // 超时、连接断开等RpcException直接抛给调用方
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
         }
         this.check(rpcResponse, rpcRequest);
         return rpcResponse.getData();
     }
 
     /**
-     * 检查响应是否为空，请求和响应的ID是否一致，响应是否成功
+     * 发送请求并立即返回，响应检查和取出数据在callbackExecutor或EventLoop中进行
+     *
+     * @param rpcRequest RPC请求对象
+     * @return 调用结果的future，发送失败时返回失败的future
+     */
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<Object> invokeAsync(RpcRequest rpcRequest) {
+        CompletableFuture<RpcResponse<Object>> future;
+        try {
+            future = (CompletableFuture<RpcResponse<Object>>) rpcRequestTransport.sendRpcRequest(rpcRequest);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            CompletableFuture<Object> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        Function<RpcResponse<Object>, Object> toResult = rpcResponse -> {
+            this.check(rpcResponse, rpcRequest);
+            return rpcResponse.getData();
+        };
+        return callbackExecutor == null ? future.thenApply(toResult) : future.thenApplyAsync(toResult, callbackExecutor);
+    }
+
+    /**
+     * 异步调用时代理的返回值，基本类型不能返回null
+     */
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        return Array.get(Array.newInstance(type, 1), 0);
+    }
+
+    /**
+     * 检查响应是否为空，响应是否成功
+     * 响应按消息头中的请求ID与请求对应，不需要再比较ID
      *
      * @param rpcResponse RPC响应对象
      * @param rpcRequest  RPC请求对象
@@ -106,8 +226,9 @@ public class RpcClientProxy implements InvocationHandler {
         if (rpcResponse == null) {
             throw new RpcException(RpcErrorEnum.SERVICE_INVOCATION_FAILURE, "interfaceName:" + rpcRequest.getInterfaceName());
         }
-        if (!rpcRequest.getRequestId().equals(rpcResponse.getRequestId())) {
-            throw new RpcException(RpcErrorEnum.REQUEST_NOT_MATCH_RESPONSE,  "interfaceName:" + rpcRequest.getInterfaceName());
+        if (rpcResponse.getCode() != null && rpcResponse.getCode().equals(RpcResponseCodeEnum.OVERLOADED.getCode())) {
+            // 所有可以重试的节点都过载
+            throw new RpcException(RpcErrorEnum.SERVER_OVERLOADED, "interfaceName:" + rpcRequest.getInterfaceName());
         }
         if (rpcResponse.getCode() == null || !rpcResponse.getCode().equals(RpcResponseCodeEnum.SUCCESS.getCode())) {
             throw new RpcException(RpcErrorEnum.SERVICE_INVOCATION_FAILURE,  "interfaceName:" + rpcRequest.getInterfaceName());
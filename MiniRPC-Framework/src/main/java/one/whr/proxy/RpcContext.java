@@ -0,0 +1,66 @@
+package one.whr.proxy;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * 以异步方式调用同步声明的服务接口
+ * <pre>
+ *     CompletableFuture&lt;String&gt; future = RpcContext.async(() -&gt; helloService.hello(hello));
+ * </pre>
+ * call中的第一次RPC调用不再等待响应，代理立即返回返回值类型的默认值，响应通过返回的future得到
+ * call中之后的RPC调用仍然是同步的
+ */
+public final class RpcContext {
+
+    private static final ThreadLocal<RpcContext> CONTEXT = ThreadLocal.withInitial(RpcContext::new);
+
+    private boolean async;
+
+    private CompletableFuture<?> future;
+
+    private RpcContext() {
+    }
+
+    /**
+     * @param call 包含一次RPC调用的代码
+     * @param <T>  返回值类型
+     * @return 这次RPC调用的结果
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> CompletableFuture<T> async(Supplier<T> call) {
+        RpcContext context = CONTEXT.get();
+        boolean outerAsync = context.async;
+        CompletableFuture<?> outerFuture = context.future;
+        context.async = true;
+        context.future = null;
+        try {
+            call.get();
+            if (context.future == null) {
+                throw new IllegalStateException("no rpc call made in RpcContext.async");
+            }
+            return (CompletableFuture<T>) context.future;
+        } finally {
+            context.async = outerAsync;
+            context.future = outerFuture;
+        }
+    }
+
+    /**
+     * @return 当前线程的下一次RPC调用是否是异步的
+     */
+    static boolean isAsync() {
+        return CONTEXT.get().async;
+    }
+
+    /**
+     * 记录async中发起的调用的future，之后的调用恢复为同步
+     *
+     * @param future 调用结果
+     */
+    static void offer(CompletableFuture<?> future) {
+        RpcContext context = CONTEXT.get();
+        context.async = false;
+        context.future = future;
+    }
+}
@@ -0,0 +1,92 @@
+package one.whr.proxy;
+
+import lombok.Getter;
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.description.modifier.Visibility;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.implementation.FieldAccessor;
+import net.bytebuddy.implementation.MethodCall;
+import net.bytebuddy.implementation.bytecode.assign.Assigner;
+import net.bytebuddy.matcher.ElementMatchers;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 用ByteBuddy为服务接口生成stub类，每个接口一个，生成后缓存
+ * stub的每个方法直接调用handler.invoke(方法序号, 参数数组)，
+ * 不经过Proxy的InvocationHandler，也不需要按Method查找调用配置
+ */
+final class RpcStubGenerator {
+
+    private static final String HANDLER_FIELD = "handler";
+
+    private static final Map<Class<?>, StubClass> STUB_CLASSES = new ConcurrentHashMap<>();
+
+    private RpcStubGenerator() {
+    }
+
+    static StubClass getStubClass(Class<?> serviceInterface) {
+        return STUB_CLASSES.computeIfAbsent(serviceInterface, RpcStubGenerator::generate);
+    }
+
+    private static StubClass generate(Class<?> serviceInterface) {
+        Method invoke;
+        try {
+            invoke = RpcStubHandler.class.getMethod("invoke", int.class, Object[].class);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+        Method[] methods = serviceInterface.getMethods();
+        DynamicType.Builder<Object> builder = new ByteBuddy()
+                .subclass(Object.class)
+                .name(serviceInterface.getName() + "$RpcStub")
+                .implement(serviceInterface)
+                .defineField(HANDLER_FIELD, RpcStubHandler.class, Visibility.PRIVATE)
+                .defineConstructor(Visibility.PUBLIC)
+                .withParameters(RpcStubHandler.class)
+                .intercept(MethodCall.invoke(objectConstructor())
+                        .andThen(FieldAccessor.ofField(HANDLER_FIELD).setsArgumentAt(0)));
+        for (int i = 0; i < methods.length; i++) {
+            // 参数装入一个数组，返回值按方法的返回类型转换或拆箱
+            builder = builder.method(ElementMatchers.is(methods[i]))
+                    .intercept(MethodCall.invoke(invoke)
+                            .onField(HANDLER_FIELD)
+                            .with(i)
+                            .withArgumentArray()
+                            .withAssigner(Assigner.DEFAULT, Assigner.Typing.DYNAMIC));
+        }
+        Class<?> stubType = builder.make()
+                .load(serviceInterface.getClassLoader(), ClassLoadingStrategy.Default.WRAPPER)
+                .getLoaded();
+        return new StubClass(stubType, methods);
+    }
+
+    private static Constructor<Object> objectConstructor() {
+        try {
+            return Object.class.getConstructor();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Getter
+    static final class StubClass {
+        private final Class<?> type;
+
+        // stub中方法序号对应的接口方法
+        private final Method[] methods;
+
+        private StubClass(Class<?> type, Method[] methods) {
+            this.type = type;
+            this.methods = methods;
+        }
+
+        Object newInstance(RpcStubHandler handler) throws ReflectiveOperationException {
+            return type.getConstructor(RpcStubHandler.class).newInstance(handler);
+        }
+    }
+}
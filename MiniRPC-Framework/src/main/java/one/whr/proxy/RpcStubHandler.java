@@ -0,0 +1,15 @@
+package one.whr.proxy;
+
+/**
+ * 生成的stub类中每个接口方法都调用这个接口，按方法在stub中的序号找到预先解析好的调用配置
+ */
+public interface RpcStubHandler {
+
+    /**
+     * @param methodIndex 方法在RpcStubGenerator.StubClass#getMethods中的序号
+     * @param args        调用参数，没有参数时为空数组
+     * @return RPC调用的结果
+     * @throws Throwable 调用失败
+     */
+    Object invoke(int methodIndex, Object[] args) throws Throwable;
+}
@@ -0,0 +1,72 @@
+package one.whr.registry;
+
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 服务提供者的一个地址
+ * 注册中心的节点名(host:port)和节点数据在更新快照时解析一次，查找时直接使用解析好的InetSocketAddress
+ */
+@Slf4j
+@Getter
+@ToString
+public final class Endpoint {
+    // 节点名，host:port
+    private final String url;
+
+    private final InetSocketAddress address;
+
+    // 提供者在节点数据中发布的元数据，每行一个key=value，没有时为空
+    private final Map<String, String> metadata;
+
+    private Endpoint(String url, InetSocketAddress address, Map<String, String> metadata) {
+        this.url = url;
+        this.address = address;
+        this.metadata = metadata;
+    }
+
+    /**
+     * @param url  节点名，host:port
+     * @param data 节点数据，可以为null
+     * @return 节点名不是host:port时返回null
+     */
+    public static Endpoint parse(String url, byte[] data) {
+        int separator = url.lastIndexOf(':');
+        if (separator <= 0) {
+            log.warn("invalid service address: [{}]", url);
+            return null;
+        }
+        int port;
+        try {
+            port = Integer.parseInt(url.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            log.warn("invalid service address: [{}]", url);
+            return null;
+        }
+        return new Endpoint(url, new InetSocketAddress(url.substring(0, separator), port), parseMetadata(data));
+    }
+
+    /**
+     * 不是key=value的行被忽略，没有指定数据的节点中是curator默认写入的本机地址
+     */
+    private static Map<String, String> parseMetadata(byte[] data) {
+        if (data == null || data.length == 0) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> metadata = new HashMap<>();
+        for (String line : new String(data, StandardCharsets.UTF_8).split("\n")) {
+            int separator = line.indexOf('=');
+            if (separator > 0) {
+                metadata.put(line.substring(0, separator).trim(), line.substring(separator + 1).trim());
+            }
+        }
+        return metadata.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(metadata);
+    }
+}
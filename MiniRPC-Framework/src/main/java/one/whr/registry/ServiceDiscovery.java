@@ -4,8 +4,31 @@ import one.whr.annotation.SPI;
 import one.whr.remote.dto.RpcRequest;
 
 import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @SPI
 public interface ServiceDiscovery {
     InetSocketAddress lookupService(RpcRequest rpcRequest);
+
+    /**
+     * 重试时选择还没有尝试过的地址
+     *
+     * @param rpcRequest RPC请求
+     * @param excluded   已经尝试过的地址
+     * @return 没有其他地址时返回null
+     */
+    default InetSocketAddress lookupService(RpcRequest rpcRequest, Set<InetSocketAddress> excluded) {
+        InetSocketAddress address = lookupService(rpcRequest);
+        return excluded.contains(address) ? null : address;
+    }
+
+    /**
+     * 注册一个监听器，一个地址不再提供任何查找过的服务时回调，客户端据此关闭这个地址的连接
+     * 默认不通知地址的变化
+     *
+     * @param listener 参数是移除的地址，在注册中心的事件线程中调用
+     */
+    default void addRemovalListener(Consumer<InetSocketAddress> listener) {
+    }
 }
@@ -1,11 +1,16 @@
 package one.whr.registry;
 
 import one.whr.config.RpcServiceConfig;
+import one.whr.remote.transport.server.ServiceMethodTable;
 
 public interface ServiceProvider {
     void addService(RpcServiceConfig rpcServiceConfig);
 
     Object getService(String rpcServiceName);
 
+    RpcServiceConfig getServiceConfig(String rpcServiceName);
+
+    ServiceMethodTable getMethodTable(String rpcServiceName);
+
     void publishService(RpcServiceConfig rpcServiceConfig);
 }
@@ -0,0 +1,97 @@
+package one.whr.registry;
+
+import lombok.Getter;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个服务所有提供者地址的不可变快照
+ * 注册中心的每次变化都生成一个新的快照整体替换旧的，查找地址时直接读取当前快照，不复制列表也不解析地址
+ * version在内容变化时递增且全局唯一，负载均衡可以按version缓存由地址列表计算出的状态
+ */
+@Getter
+public final class ServiceSnapshot {
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    public static final ServiceSnapshot EMPTY = new ServiceSnapshot(new LinkedHashMap<>());
+
+    private final long version;
+
+    private final List<Endpoint> endpoints;
+
+    // 与endpoints顺序相同的节点名，用于按地址字符串选择的负载均衡
+    private final List<String> urls;
+
+    // key: url
+    private final Map<String, Endpoint> endpointMap;
+
+    private ServiceSnapshot(LinkedHashMap<String, Endpoint> endpointMap) {
+        this.version = VERSIONS.incrementAndGet();
+        this.endpointMap = Collections.unmodifiableMap(endpointMap);
+        this.endpoints = Collections.unmodifiableList(new ArrayList<>(endpointMap.values()));
+        this.urls = Collections.unmodifiableList(new ArrayList<>(endpointMap.keySet()));
+    }
+
+    public static ServiceSnapshot of(Collection<Endpoint> endpoints) {
+        LinkedHashMap<String, Endpoint> endpointMap = new LinkedHashMap<>();
+        for (Endpoint endpoint : endpoints) {
+            endpointMap.put(endpoint.getUrl(), endpoint);
+        }
+        return new ServiceSnapshot(endpointMap);
+    }
+
+    /**
+     * @param endpoint 新增或者元数据变化的地址
+     * @return 新的快照，没有变化时返回自身
+     */
+    public ServiceSnapshot with(Endpoint endpoint) {
+        Endpoint existing = endpointMap.get(endpoint.getUrl());
+        if (existing != null && existing.getMetadata().equals(endpoint.getMetadata())) {
+            return this;
+        }
+        LinkedHashMap<String, Endpoint> updated = new LinkedHashMap<>(endpointMap);
+        updated.put(endpoint.getUrl(), endpoint);
+        return new ServiceSnapshot(updated);
+    }
+
+    /**
+     * @param url 移除的节点名
+     * @return 新的快照，没有这个地址时返回自身
+     */
+    public ServiceSnapshot without(String url) {
+        if (!endpointMap.containsKey(url)) {
+            return this;
+        }
+        LinkedHashMap<String, Endpoint> updated = new LinkedHashMap<>(endpointMap);
+        updated.remove(url);
+        return new ServiceSnapshot(updated);
+    }
+
+    public Endpoint getEndpoint(String url) {
+        return endpointMap.get(url);
+    }
+
+    /**
+     * @param address 服务地址
+     * @return 是否有解析到这个地址的节点，按顺序比较，只在地址移除时使用
+     */
+    public boolean contains(InetSocketAddress address) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.getAddress().equals(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return endpoints.isEmpty();
+    }
+}
@@ -5,17 +5,21 @@ import one.whr.enums.RpcErrorEnum;
 import one.whr.exception.RpcException;
 import one.whr.extension.ExtensionLoader;
 import one.whr.loadbalance.LoadBalance;
+import one.whr.registry.Endpoint;
 import one.whr.registry.ServiceDiscovery;
+import one.whr.registry.ServiceSnapshot;
 import one.whr.registry.zookeeper.util.CuratorUtils;
 import one.whr.remote.dto.RpcRequest;
-import one.whr.utils.CollectionUtil;
-import org.apache.curator.framework.CuratorFramework;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * 客户端服务发现实现类
+ * 地址来自CuratorUtils中由watcher维护的快照，查找时不复制地址列表，也不再解析host:port
  */
 @Slf4j
 public class ZkServiceDiscoveryImpl implements ServiceDiscovery {
@@ -34,19 +38,50 @@ public class ZkServiceDiscoveryImpl implements ServiceDiscovery {
     @Override
     public InetSocketAddress lookupService(RpcRequest rpcRequest) {
         String rpcServiceName = rpcRequest.getRpcServiceName(); // interface name + group + version
-        CuratorFramework zkClient = CuratorUtils.getZkClient();
 
         // 从zk获取服务的地址
-        List<String> serviceUrlList = CuratorUtils.getChildrenNodes(zkClient, rpcServiceName);
-        if (CollectionUtil.isEmpty(serviceUrlList)) {
+        ServiceSnapshot snapshot = CuratorUtils.getServiceSnapshot(CuratorUtils.getZkClient(), rpcServiceName);
+        if (snapshot == null || snapshot.isEmpty()) {
             throw new RpcException(RpcErrorEnum.SERVICE_NOT_FOUND, rpcServiceName);
         }
-        String targetServiceUrl = loadBalancer.selectServiceAddress(serviceUrlList, rpcRequest);
+        Endpoint endpoint = loadBalancer.select(snapshot, rpcRequest);
 
-        log.info("Target service address: [{}]", targetServiceUrl);
-        String[] socketAddressArray = targetServiceUrl.split(":");
-        String host = socketAddressArray[0];
-        int port = Integer.parseInt(socketAddressArray[1]);
-        return new InetSocketAddress(host, port);
+        log.debug("Target service address: [{}]", endpoint.getUrl());
+        return endpoint.getAddress();
+    }
+
+    /**
+     * 在excluded之外的地址中执行负载均衡
+     *
+     * @param rpcRequest RPC请求
+     * @param excluded   已经尝试过的地址
+     * @return 没有其他地址时返回null
+     */
+    @Override
+    public InetSocketAddress lookupService(RpcRequest rpcRequest, Set<InetSocketAddress> excluded) {
+        String rpcServiceName = rpcRequest.getRpcServiceName();
+        ServiceSnapshot snapshot = CuratorUtils.getServiceSnapshot(CuratorUtils.getZkClient(), rpcServiceName);
+        if (snapshot == null || snapshot.isEmpty()) {
+            return null;
+        }
+        // 只在重试时调用，剩下的地址不会被缓存，按地址字符串选择
+        List<String> candidates = new ArrayList<>(snapshot.getEndpoints().size());
+        for (Endpoint endpoint : snapshot.getEndpoints()) {
+            if (!excluded.contains(endpoint.getAddress())) {
+                candidates.add(endpoint.getUrl());
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        String targetServiceUrl = loadBalancer.selectServiceAddress(candidates, rpcRequest);
+
+        log.debug("Target service address: [{}]", targetServiceUrl);
+        return snapshot.getEndpoint(targetServiceUrl).getAddress();
+    }
+
+    @Override
+    public void addRemovalListener(Consumer<InetSocketAddress> listener) {
+        CuratorUtils.addRemovalListener(listener);
     }
 }
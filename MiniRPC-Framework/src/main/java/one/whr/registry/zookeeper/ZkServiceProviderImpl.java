@@ -8,6 +8,7 @@ import one.whr.extension.ExtensionLoader;
 import one.whr.registry.ServiceProvider;
 import one.whr.registry.ServiceRegistry;
 import one.whr.remote.transport.server.RpcServer;
+import one.whr.remote.transport.server.ServiceMethodTable;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
@@ -20,8 +21,11 @@ import java.util.concurrent.ConcurrentHashMap;
 public class ZkServiceProviderImpl implements ServiceProvider {
 
     // key: rpc service name (interface name + version + group)
-    // value: service object
-    private final Map<String, Object> serviceMap;
+    // value: service config, which holds the service object
+    private final Map<String, RpcServiceConfig> serviceMap;
+
+    // key: rpc service name，value: 服务的方法表，注册时创建
+    private final Map<String, ServiceMethodTable> methodTableMap;
 
     private final Set<String> registeredServices;
 
@@ -29,6 +33,7 @@ public class ZkServiceProviderImpl implements ServiceProvider {
 
     public ZkServiceProviderImpl() {
         serviceMap = new ConcurrentHashMap<>();
+        methodTableMap = new ConcurrentHashMap<>();
         registeredServices = ConcurrentHashMap.newKeySet();
         serviceRegistry = ExtensionLoader.getExtensionLoader(ServiceRegistry.class).getExtension("zk");
     }
@@ -41,11 +46,37 @@ public class ZkServiceProviderImpl implements ServiceProvider {
      */
     @Override
     public Object getService(String rpcServiceName) {
-        Object service = serviceMap.get(rpcServiceName);
-        if (service == null) {
+        return getServiceConfig(rpcServiceName).getService();
+    }
+
+    /**
+     * 服务端根据服务名称获取服务的配置
+     *
+     * @param rpcServiceName RPC服务名称
+     * @return 服务配置
+     */
+    @Override
+    public RpcServiceConfig getServiceConfig(String rpcServiceName) {
+        RpcServiceConfig rpcServiceConfig = serviceMap.get(rpcServiceName);
+        if (rpcServiceConfig == null) {
+            throw new RpcException(RpcErrorEnum.SERVICE_NOT_FOUND);
+        }
+        return rpcServiceConfig;
+    }
+
+    /**
+     * 服务端根据服务名称获取服务的方法表
+     *
+     * @param rpcServiceName RPC服务名称
+     * @return 方法表
+     */
+    @Override
+    public ServiceMethodTable getMethodTable(String rpcServiceName) {
+        ServiceMethodTable methodTable = methodTableMap.get(rpcServiceName);
+        if (methodTable == null) {
             throw new RpcException(RpcErrorEnum.SERVICE_NOT_FOUND);
         }
-        return service;
+        return methodTable;
     }
 
     /**
@@ -72,7 +103,9 @@ public class ZkServiceProviderImpl implements ServiceProvider {
             return;
         }
         registeredServices.add(rpcServiceName);
-        serviceMap.put(rpcServiceName, rpcServiceConfig.getService());
+        Object service = rpcServiceConfig.getService();
+        methodTableMap.put(rpcServiceName, new ServiceMethodTable(service.getClass().getInterfaces()[0], service));
+        serviceMap.put(rpcServiceName, rpcServiceConfig);
         log.info("Add service: {} --- interface: {}", rpcServiceName, rpcServiceConfig.getService().getClass().getInterfaces());
     }
 }
@@ -2,14 +2,18 @@ package one.whr.registry.zookeeper.util;
 
 import lombok.extern.slf4j.Slf4j;
 import one.whr.enums.RpcConfigEnum;
+import one.whr.registry.Endpoint;
+import one.whr.registry.ServiceSnapshot;
 import one.whr.utils.PropertiesUtils;
 import org.apache.curator.RetryPolicy;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.framework.imps.CuratorFrameworkState;
-import org.apache.curator.framework.recipes.cache.PathChildrenCache;
-import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.CuratorCache;
+import org.apache.curator.framework.recipes.cache.CuratorCacheListener;
 import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.utils.ZKPaths;
 import org.apache.zookeeper.CreateMode;
 
 import java.net.InetSocketAddress;
@@ -17,8 +21,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 @Slf4j
 public class CuratorUtils {
@@ -28,7 +37,17 @@ public class CuratorUtils {
 
     public static final String ZK_REGISTER_ROOT_PATH = "/my-rpc";
 
-    private static final Map<String, List<String>> SERVICE_ADDRESS_MAP = new ConcurrentHashMap<>();
+    // 等待watcher读取服务初始地址的时间
+    private static final int WATCHER_INIT_TIMEOUT_SECONDS = 10;
+
+    // watcher初始化失败后，这段时间内的查找直接返回null，不再等待zk
+    private static final long WATCHER_RETRY_BACKOFF_MILLIS = 3000;
+
+    // key: rpc service name
+    private static final Map<String, ServiceWatcher> SERVICE_WATCHER_MAP = new ConcurrentHashMap<>();
+
+    // 地址不再提供任何已经查找过的服务时回调
+    private static final List<Consumer<InetSocketAddress>> REMOVAL_LISTENERS = new CopyOnWriteArrayList<>();
 
     private static final Set<String> REGISTERED_PATH_SET = ConcurrentHashMap.newKeySet();
 
@@ -40,7 +59,7 @@ public class CuratorUtils {
     }
 
     /**
-     * 将服务注册到zk
+     * 将服务注册到zk，记录注册的路径，关闭时由clearRegistry删除
      *
      * @param zkClient zk
      * @param path     服务的路径
@@ -53,6 +72,8 @@ public class CuratorUtils {
                 zkClient.create().creatingParentsIfNeeded().withMode(CreateMode.PERSISTENT).forPath(path);
                 log.info("The node was created successfully. The node is:[{}]", path);
             }
+            // 已经存在的节点可能是上一次没有正常关闭留下的，同样在关闭时删除
+            REGISTERED_PATH_SET.add(path);
         } catch (Exception e) {
             log.error("create persistent node for path [{}] fail", path);
         }
@@ -66,39 +87,60 @@ public class CuratorUtils {
      * @return url列表
      */
     public static List<String> getChildrenNodes(CuratorFramework zkClient, String rpcServiceName) {
-        if (SERVICE_ADDRESS_MAP.containsKey(rpcServiceName)) {
-            return SERVICE_ADDRESS_MAP.get(rpcServiceName);
-        }
-
-        List<String> result = null;
-        String servicePath = ZK_REGISTER_ROOT_PATH + "/" + rpcServiceName;
-        try {
-            result = zkClient.getChildren().forPath(servicePath);
-            SERVICE_ADDRESS_MAP.put(rpcServiceName, result);
-            registerWatcher(rpcServiceName, zkClient);
-        } catch (Exception e) {
-            log.error("get children nodes for path [{}] fail", servicePath);
-        }
-        return result;
+        ServiceSnapshot snapshot = getServiceSnapshot(zkClient, rpcServiceName);
+        return snapshot == null ? null : snapshot.getUrls();
     }
 
     /**
-     * 添加一个watcher，在子节点发生改变时更新服务地址保存进SERVICE_ADDRESS_MAP
+     * 获取服务当前的地址快照，第一次获取时注册watcher读取初始地址，之后由watcher增量更新
+     * 只等待这个服务的watcher初始化，不持有所有服务共用的锁，初始化失败后在WATCHER_RETRY_BACKOFF_MILLIS之后才重新注册
      *
-     * @param rpcServiceName 服务名
      * @param zkClient       zk
-     * @throws Exception 异常
+     * @param rpcServiceName 服务名
+     * @return 地址快照，读取失败时返回null
      */
-    private static void registerWatcher(String rpcServiceName, CuratorFramework zkClient) throws Exception {
-        String servicePath = ZK_REGISTER_ROOT_PATH + "/" + rpcServiceName;
-        PathChildrenCache pathChildrenCache = new PathChildrenCache(zkClient, servicePath, true);
-        PathChildrenCacheListener pathChildrenCacheListener = ((curatorFramework, pathChildrenCacheEvent) -> {
-            List<String> serviceAddresses = curatorFramework.getChildren().forPath(servicePath);
-            SERVICE_ADDRESS_MAP.put(rpcServiceName, serviceAddresses);
-        });
+    public static ServiceSnapshot getServiceSnapshot(CuratorFramework zkClient, String rpcServiceName) {
+        ServiceWatcher watcher = SERVICE_WATCHER_MAP.get(rpcServiceName);
+        if (watcher != null) {
+            ServiceSnapshot snapshot = watcher.snapshot;
+            if (snapshot != null) {
+                return snapshot;
+            }
+            if (watcher.isFailed()) {
+                if (!watcher.canRetry()) {
+                    return null;
+                }
+                SERVICE_WATCHER_MAP.remove(rpcServiceName, watcher);
+            }
+        }
+        // computeIfAbsent中只创建并启动watcher，不等待zk，每个服务只注册一个watcher
+        return SERVICE_WATCHER_MAP.computeIfAbsent(rpcServiceName, name -> ServiceWatcher.start(zkClient, name)).await();
+    }
 
-        pathChildrenCache.getListenable().addListener(pathChildrenCacheListener);
-        pathChildrenCache.start();
+    /**
+     * @param listener 地址从所有服务的快照中移除后回调，参数是移除的地址
+     */
+    public static void addRemovalListener(Consumer<InetSocketAddress> listener) {
+        REMOVAL_LISTENERS.add(listener);
+    }
+
+    /**
+     * 一个服务移除了address之后，其他服务仍然使用这个地址时不通知，同一个提供者的连接被所有服务共用
+     */
+    private static void onAddressRemoved(InetSocketAddress address) {
+        for (ServiceWatcher watcher : SERVICE_WATCHER_MAP.values()) {
+            ServiceSnapshot snapshot = watcher.snapshot;
+            if (snapshot != null && snapshot.contains(address)) {
+                return;
+            }
+        }
+        for (Consumer<InetSocketAddress> listener : REMOVAL_LISTENERS) {
+            try {
+                listener.accept(address);
+            } catch (RuntimeException e) {
+                log.warn("removal listener fail for [{}]", address, e);
+            }
+        }
     }
 
     /**
@@ -112,6 +154,7 @@ public class CuratorUtils {
             try {
                 if (p.endsWith(inetSocketAddress.toString())) {
                     zkClient.delete().forPath(p);
+                    REGISTERED_PATH_SET.remove(p);
                 }
             } catch (Exception e) {
                 log.error("clear registry for path [{}] fail", p);
@@ -151,4 +194,125 @@ public class CuratorUtils {
 
     }
 
+    /**
+     * 一个服务的watcher，按子节点的增加、更新、删除事件生成新的快照，不再重新读取整个列表
+     * 事件在cache的事件线程中按顺序处理，初始的子节点也以创建事件到达，初始化完成时用初始快照完成initialized，
+     * 之后的每次变化发布到snapshot
+     */
+    private static final class ServiceWatcher {
+        private final String servicePath;
+
+        // CuratorCache缓存整棵子树，事件中包括服务节点自身，只处理服务节点的直接子节点
+        private final CuratorCache cache;
+
+        // 初始快照，初始化超时或启动失败时异常完成
+        private final CompletableFuture<ServiceSnapshot> initialized = new CompletableFuture<>();
+
+        // 只在事件线程中访问
+        private ServiceSnapshot current = ServiceSnapshot.EMPTY;
+
+        // 初始化完成前为null，之后只由事件线程更新
+        private volatile ServiceSnapshot snapshot;
+
+        private volatile long failedAt;
+
+        private ServiceWatcher(CuratorFramework zkClient, String servicePath) {
+            this.servicePath = servicePath;
+            this.cache = CuratorCache.build(zkClient, servicePath);
+        }
+
+        private static ServiceWatcher start(CuratorFramework zkClient, String rpcServiceName) {
+            ServiceWatcher watcher = new ServiceWatcher(zkClient, ZK_REGISTER_ROOT_PATH + "/" + rpcServiceName);
+            CuratorCacheListener listener = CuratorCacheListener.builder()
+                    .forCreates(watcher::onUpdated)
+                    .forChanges((oldNode, node) -> watcher.onUpdated(node))
+                    .forDeletes(watcher::onRemoved)
+                    .forInitialized(watcher::onInitialized)
+                    .build();
+            watcher.cache.listenable().addListener(listener);
+            try {
+                // 异步读取子节点，读完后回调forInitialized，之后连接断开期间的变化在重新连接后以节点事件补上
+                watcher.cache.start();
+            } catch (Exception e) {
+                watcher.fail(e);
+            }
+            return watcher;
+        }
+
+        private void onUpdated(ChildData childData) {
+            if (isChild(childData)) {
+                Endpoint endpoint = Endpoint.parse(ZKPaths.getNodeFromPath(childData.getPath()), childData.getData());
+                if (endpoint != null) {
+                    publish(current.with(endpoint));
+                }
+            }
+        }
+
+        private void onRemoved(ChildData childData) {
+            if (isChild(childData)) {
+                String url = ZKPaths.getNodeFromPath(childData.getPath());
+                Endpoint removed = current.getEndpoint(url);
+                publish(current.without(url));
+                // 初始化之前的事件只是在构建初始快照
+                if (removed != null && snapshot != null) {
+                    onAddressRemoved(removed.getAddress());
+                }
+            }
+        }
+
+        private void onInitialized() {
+            // 初始化已经超时失败时cache已经关闭，不再发布
+            if (initialized.complete(current)) {
+                snapshot = current;
+            }
+        }
+
+        private void publish(ServiceSnapshot updated) {
+            current = updated;
+            if (snapshot != null) {
+                snapshot = updated;
+            }
+        }
+
+        private boolean isChild(ChildData childData) {
+            return servicePath.equals(ZKPaths.getPathAndNode(childData.getPath()).getPath());
+        }
+
+        /**
+         * 等待初始化完成，超时后关闭cache，之后的查找在退避时间内直接返回null
+         *
+         * @return 地址快照，初始化失败时返回null
+         */
+        private ServiceSnapshot await() {
+            try {
+                ServiceSnapshot initial = initialized.get(WATCHER_INIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                ServiceSnapshot latest = snapshot;
+                return latest != null ? latest : initial;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                return null;
+            } catch (TimeoutException e) {
+                fail(new IllegalStateException("Timeout waiting for children of " + servicePath));
+                return snapshot;
+            }
+        }
+
+        private void fail(Throwable cause) {
+            failedAt = System.currentTimeMillis();
+            if (initialized.completeExceptionally(cause)) {
+                log.error("get children nodes for path [{}] fail", servicePath, cause);
+                cache.close();
+            }
+        }
+
+        private boolean isFailed() {
+            return initialized.isCompletedExceptionally();
+        }
+
+        private boolean canRetry() {
+            return System.currentTimeMillis() - failedAt >= WATCHER_RETRY_BACKOFF_MILLIS;
+        }
+    }
 }
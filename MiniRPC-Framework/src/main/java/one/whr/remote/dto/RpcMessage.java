@@ -23,7 +23,9 @@ public class RpcMessage {
 
     private byte compress;  // 压缩方式
 
-    private int requestId;  // 请求ID
+    private int requestId;  // 请求ID，客户端连接内的序号，响应沿用请求的ID
 
     private Object data;  // 消息体
+
+    private long deadline;  // 请求的截止时间(System.nanoTime)，由服务端解码时根据请求的超时时间计算，0表示没有截止时间，不会写入消息
 }
@@ -4,6 +4,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 import lombok.ToString;
 
 import java.io.Serializable;
@@ -16,15 +17,39 @@ import java.io.Serializable;
 @ToString
 public class RpcRequest implements Serializable {
     private static final long serialVersionUID = 1905122041950251207L;
-    private String requestId;
     private String interfaceName;
+    // 连接内服务字典中的ID，interfaceName、group、version为null时由服务端按ID还原，0表示不使用字典
+    private int serviceId;
+    // 方法签名的hash，服务端据此在方法表中找到方法；为0时按methodName和paramTypes查找
+    private int methodId;
     private String methodName;
     private Object[] parameters;
     private Class<?>[] paramTypes;
     private String version;
     private String group;
 
+    // 发送时剩余的超时时间(ms)，不大于0表示没有超时限制；服务端据此丢弃调用方已经放弃的请求
+    @Setter
+    private long timeout;
+
+    // 以下字段只在客户端本地使用，transient使其不参与序列化
+    // 请求使用的序列化和压缩方式，0表示使用客户端的默认配置
+    private transient byte codec;
+    private transient byte compress;
+    // 客户端代理预先拼接好的服务名，避免每次查找服务地址都拼接字符串
+    private transient String rpcServiceName;
+
     public String getRpcServiceName() {
+        if (rpcServiceName != null) {
+            return rpcServiceName;
+        }
         return this.getInterfaceName() + this.getGroup() + this.getVersion();
     }
+
+    /**
+     * 日志中的方法描述，按方法ID调用时请求中没有方法名
+     */
+    public String getMethodDescription() {
+        return methodName != null ? methodName : "#" + Integer.toHexString(methodId);
+    }
 }
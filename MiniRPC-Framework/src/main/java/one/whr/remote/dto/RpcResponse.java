@@ -18,8 +18,6 @@ import java.io.Serializable;
 @ToString
 public class RpcResponse<T> implements Serializable {
     private static final long serialVersionUID = 9074908372316261836L;
-    private String requestId;
-
     private Integer code;
 
     private String message;
@@ -29,16 +27,14 @@ public class RpcResponse<T> implements Serializable {
     /**
      * 生成success的RPC响应
      *
-     * @param data      服务执行结果
-     * @param requestId 请求ID
-     * @param <T>       类型
+     * @param data 服务执行结果
+     * @param <T>  类型
      * @return RPC响应
      */
-    public static <T> RpcResponse<T> generateSuccessResponse(T data, String requestId) {
+    public static <T> RpcResponse<T> generateSuccessResponse(T data) {
         RpcResponse<T> response = new RpcResponse<>();
         response.setCode(RpcResponseCodeEnum.SUCCESS.getCode());
         response.setMessage(RpcResponseCodeEnum.SUCCESS.getMessage());
-        response.setRequestId(requestId);
         if (null != data) {
             response.setData(data);
         }
@@ -0,0 +1,296 @@
+package one.whr.remote.transport.client;
+
+import io.netty.channel.Channel;
+import lombok.extern.slf4j.Slf4j;
+import one.whr.enums.RpcErrorEnum;
+import one.whr.exception.RpcException;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 一个服务地址的连接池，固定数量的连接槽位，每个连接分配在不同的EventLoop上
+ * 请求按least-pending(等待响应的请求最少)或round-robin选择连接
+ * 已经断开的连接在选择时移出，空的槽位在后台重新建立连接
+ * 每个槽位同时只有一个连接在建立，建立失败后按指数退避等待一段时间再重试
+ */
+@Slf4j
+class ChannelPool {
+
+    static final String LEAST_PENDING = "least-pending";
+
+    static final String ROUND_ROBIN = "round-robin";
+
+    private static final long INITIAL_BACKOFF_MILLIS = 100;
+
+    private static final long MAX_BACKOFF_MILLIS = 10_000;
+
+    private final InetSocketAddress address;
+
+    private final Slot[] slots;
+
+    private final boolean roundRobin;
+
+    // 为null时不会补齐连接，只使用放入的连接
+    private final Function<InetSocketAddress, CompletableFuture<Channel>> connector;
+
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    // 关闭后不再建立连接
+    private volatile boolean closed;
+
+    ChannelPool(InetSocketAddress address, int size, String selection,
+                Function<InetSocketAddress, CompletableFuture<Channel>> connector) {
+        this.address = address;
+        this.slots = new Slot[Math.max(1, size)];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot();
+        }
+        this.roundRobin = ROUND_ROBIN.equals(selection);
+        this.connector = connector;
+    }
+
+    /**
+     * 选择一个可用的连接，没有可用连接时得到正在建立的连接中最先建立成功的那个
+     * 所有槽位都在退避等待时直接失败，不让调用方等待
+     *
+     * @return 已经连接的channel
+     */
+    CompletableFuture<Channel> acquire() {
+        Channel channel = select();
+        if (channel != null) {
+            return CompletableFuture.completedFuture(channel);
+        }
+        List<CompletableFuture<Channel>> connecting = new ArrayList<>(slots.length);
+        for (Slot slot : slots) {
+            CompletableFuture<Channel> connectFuture = slot.connectFuture;
+            if (connectFuture != null) {
+                connecting.add(connectFuture);
+            }
+        }
+        if (connecting.isEmpty()) {
+            // 连接恰好在select之后建立完成
+            channel = select();
+            CompletableFuture<Channel> result = new CompletableFuture<>();
+            if (channel != null) {
+                result.complete(channel);
+            } else {
+                result.completeExceptionally(new RpcException(RpcErrorEnum.CLIENT_CONNECT_SERVER_FAILURE,
+                        address + ", waiting to reconnect"));
+            }
+            return result;
+        }
+        return firstConnected(connecting);
+    }
+
+    /**
+     * @return 最先建立成功的连接，全部失败时以最后一个失败原因结束
+     */
+    private static CompletableFuture<Channel> firstConnected(List<CompletableFuture<Channel>> connecting) {
+        if (connecting.size() == 1) {
+            return connecting.get(0);
+        }
+        CompletableFuture<Channel> result = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(connecting.size());
+        for (CompletableFuture<Channel> connectFuture : connecting) {
+            connectFuture.whenComplete((channel, e) -> {
+                if (e == null) {
+                    result.complete(channel);
+                } else if (remaining.decrementAndGet() == 0) {
+                    result.completeExceptionally(e);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * 移出已经断开的连接，为空的槽位建立连接，然后按选择策略返回一个活跃的连接
+     *
+     * @return 活跃的连接，没有时为null
+     */
+    Channel select() {
+        int active = 0;
+        for (Slot slot : slots) {
+            Channel channel = slot.channel;
+            if (channel != null && !channel.isActive()) {
+                // 健康检查：断开的连接(包括连续超时、心跳超时被关闭的连接)移出连接池
+                log.info("evict inactive channel: [{}]", channel);
+                slot.channel = null;
+                channel = null;
+            }
+            if (channel == null) {
+                connect(slot);
+            } else {
+                active++;
+            }
+        }
+        if (active == 0) {
+            return null;
+        }
+        return roundRobin ? selectRoundRobin() : selectLeastPending();
+    }
+
+    /**
+     * 放入一个已经建立的连接
+     *
+     * @return 是否有空的槽位
+     */
+    boolean offer(Channel channel) {
+        for (Slot slot : slots) {
+            if (slot.channel == null && slot.connectFuture == null) {
+                synchronized (slot) {
+                    if (slot.channel == null && slot.connectFuture == null) {
+                        slot.channel = channel;
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    InetSocketAddress getAddress() {
+        return address;
+    }
+
+    boolean contains(Channel channel) {
+        for (Slot slot : slots) {
+            if (slot.channel == channel) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 关闭连接池：不再建立新的连接，已经建立的连接在等待中的请求都完成后关闭
+     */
+    void close() {
+        closed = true;
+        for (Slot slot : slots) {
+            Channel channel = slot.channel;
+            if (channel != null) {
+                closeWhenIdle(channel);
+            }
+        }
+    }
+
+    /**
+     * 与收到GOAWAY相同的处理，UnprocessedRequestMap只在EventLoop中访问
+     */
+    private static void closeWhenIdle(Channel channel) {
+        UnprocessedRequestMap unprocessedRequests = channel.attr(UnprocessedRequestMap.KEY).get();
+        if (unprocessedRequests == null) {
+            channel.close();
+            return;
+        }
+        channel.eventLoop().execute(() -> {
+            unprocessedRequests.goAway();
+            unprocessedRequests.drain(channel);
+        });
+    }
+
+    private Channel selectRoundRobin() {
+        int start = nextIndex.getAndIncrement() & Integer.MAX_VALUE;
+        for (int i = 0; i < slots.length; i++) {
+            Channel channel = slots[(start + i) % slots.length].channel;
+            if (channel != null && channel.isActive()) {
+                return channel;
+            }
+        }
+        return null;
+    }
+
+    private Channel selectLeastPending() {
+        Channel selected = null;
+        int minPending = Integer.MAX_VALUE;
+        // 从轮转的位置开始比较，等待数相同时请求也能分散到各个连接
+        int start = nextIndex.getAndIncrement() & Integer.MAX_VALUE;
+        for (int i = 0; i < slots.length; i++) {
+            Channel channel = slots[(start + i) % slots.length].channel;
+            if (channel == null || !channel.isActive()) {
+                continue;
+            }
+            int pending = channel.attr(UnprocessedRequestMap.KEY).get().pendingCount();
+            if (pending < minPending) {
+                selected = channel;
+                minPending = pending;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 异步建立连接，同一个槽位同时只有一个连接在建立，并发的调用方共用这一次连接
+     * 上一次建立失败后的退避时间内不再尝试
+     */
+    private void connect(Slot slot) {
+        if (connector == null || closed || slot.connectFuture != null || System.nanoTime() - slot.retryAt < 0) {
+            return;
+        }
+        CompletableFuture<Channel> connectFuture;
+        synchronized (slot) {
+            if (slot.channel != null || slot.connectFuture != null || System.nanoTime() - slot.retryAt < 0) {
+                return;
+            }
+            connectFuture = new CompletableFuture<>();
+            slot.connectFuture = connectFuture;
+        }
+        CompletableFuture<Channel> connected;
+        try {
+            connected = connector.apply(address);
+        } catch (RuntimeException e) {
+            connected = new CompletableFuture<>();
+            connected.completeExceptionally(e);
+        }
+        connected.whenComplete((channel, e) -> {
+            synchronized (slot) {
+                slot.channel = channel;
+                slot.connectFuture = null;
+                if (e == null) {
+                    slot.failures = 0;
+                } else {
+                    slot.failures++;
+                    slot.retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMillis(slot.failures));
+                }
+            }
+            if (e != null) {
+                log.warn("fail to connect to [{}], attempt [{}]", address, slot.failures, e);
+                connectFuture.completeExceptionally(e);
+            } else {
+                connectFuture.complete(channel);
+                // 连接建立期间连接池已经关闭
+                if (closed) {
+                    closeWhenIdle(channel);
+                }
+            }
+        });
+    }
+
+    /**
+     * 100ms开始每次失败翻倍，最多10s，加上随机的±20%，避免大量客户端同时重连
+     */
+    private static long backoffMillis(int failures) {
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(failures - 1, 16));
+        return backoff + (long) (backoff * (ThreadLocalRandom.current().nextDouble() - 0.5) * 0.4);
+    }
+
+    private static final class Slot {
+        private volatile Channel channel;
+
+        // 正在建立连接时不为null
+        private volatile CompletableFuture<Channel> connectFuture;
+
+        // 连续建立失败的次数和下一次可以重试的时间(System.nanoTime)
+        private int failures;
+
+        private volatile long retryAt = System.nanoTime();
+    }
+}
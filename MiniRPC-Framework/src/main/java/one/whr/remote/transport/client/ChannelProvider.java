@@ -2,43 +2,133 @@ package one.whr.remote.transport.client;
 
 import io.netty.channel.Channel;
 import lombok.extern.slf4j.Slf4j;
+import one.whr.enums.RpcConfigEnum;
+import one.whr.utils.PropertiesUtils;
 
 import java.net.InetSocketAddress;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
- * 保存已经建立的channel连接
+ * 保存已经建立的channel连接，每个服务地址一个连接池
+ * 连接数由rpc.client.connections配置，选择策略由rpc.client.channel-selection配置
+ * 发送了GOAWAY的服务地址在一段时间内不再选择，直到注册中心的watcher移除这个地址
+ * 注册中心移除的地址由RpcClient调用remove关闭连接池，不再向离开的提供者重连
  */
 @Slf4j
 public class ChannelProvider {
-    private final Map<String, Channel> channelMap;
+    // 注册中心的变化通常在几秒内通知到客户端，这之后地址已经不在服务列表中
+    private static final long GOING_AWAY_MILLIS = 30_000;
+
+    private final Map<String, ChannelPool> poolMap;
+
+    // value: 不再选择这个地址的截止时间(System.nanoTime)
+    private final Map<InetSocketAddress, Long> goingAway = new ConcurrentHashMap<>();
+
+    // 每个地址的连接数
+    private final int poolSize;
+
+    // least-pending或round-robin
+    private final String selection;
 
     public ChannelProvider() {
-        channelMap = new ConcurrentHashMap<>();
+        poolMap = new ConcurrentHashMap<>();
+        poolSize = PropertiesUtils.getRpcIntProperty(RpcConfigEnum.CLIENT_CONNECTIONS, 1);
+        selection = PropertiesUtils.getRpcProperty(RpcConfigEnum.CLIENT_CHANNEL_SELECTION, ChannelPool.LEAST_PENDING);
     }
 
+    /**
+     * @param inetSocketAddress 服务地址
+     * @return 按选择策略得到的活跃连接，没有时为null
+     */
     public Channel get(InetSocketAddress inetSocketAddress) {
-        String key = inetSocketAddress.toString();
-        if (channelMap.containsKey(key)) {
-            Channel channel = channelMap.get(key);
-            if (channel != null && channel.isActive()) {
-                return channel;
-            } else {
-                channelMap.remove(key);
-            }
-        }
-        return null;
+        ChannelPool pool = poolMap.get(inetSocketAddress.toString());
+        return pool == null ? null : pool.select();
     }
 
+    /**
+     * 放入一个已经建立的连接，这个地址只使用这一个连接，不会再自动建立连接
+     */
     public void set(InetSocketAddress inetSocketAddress, Channel channel) {
-        String key = inetSocketAddress.toString();
-        channelMap.put(key, channel);
+        ChannelPool pool = new ChannelPool(inetSocketAddress, 1, selection, null);
+        pool.offer(channel);
+        poolMap.put(inetSocketAddress.toString(), pool);
     }
 
+    /**
+     * 地址不再提供服务：移除它的连接池，不再重新建立连接，已经建立的连接在等待中的请求都完成后关闭
+     *
+     * @param inetSocketAddress 服务地址
+     */
     public void remove(InetSocketAddress inetSocketAddress) {
-        String key = inetSocketAddress.toString();
-        channelMap.remove(key);
-        log.info("Channel map size :[{}]", channelMap.size());
+        goingAway.remove(inetSocketAddress);
+        ChannelPool pool = poolMap.remove(inetSocketAddress.toString());
+        if (pool != null) {
+            pool.close();
+            log.info("[{}] is removed, close its connections, channel map size :[{}]", inetSocketAddress, poolMap.size());
+        }
+    }
+
+    /**
+     * 服务端发送了GOAWAY：移除连接所在的连接池，新的请求不再使用这个地址的连接
+     *
+     * @param channel 收到GOAWAY的连接
+     */
+    public void goAway(Channel channel) {
+        for (Map.Entry<String, ChannelPool> entry : poolMap.entrySet()) {
+            ChannelPool pool = entry.getValue();
+            if (pool.contains(channel)) {
+                poolMap.remove(entry.getKey(), pool);
+                goingAway.put(pool.getAddress(), System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(GOING_AWAY_MILLIS));
+                log.info("[{}] is going away, stop sending new requests to it", pool.getAddress());
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param inetSocketAddress 服务地址
+     * @return 是否最近发送过GOAWAY
+     */
+    public boolean isGoingAway(InetSocketAddress inetSocketAddress) {
+        Long until = goingAway.get(inetSocketAddress);
+        if (until == null) {
+            return false;
+        }
+        if (System.nanoTime() - until < 0) {
+            return true;
+        }
+        goingAway.remove(inetSocketAddress, until);
+        return false;
+    }
+
+    /**
+     * @return 最近发送过GOAWAY的服务地址
+     */
+    public Set<InetSocketAddress> getGoingAwayAddresses() {
+        Set<InetSocketAddress> addresses = new HashSet<>();
+        for (InetSocketAddress address : goingAway.keySet()) {
+            if (isGoingAway(address)) {
+                addresses.add(address);
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * 地址对应的连接池，第一次使用时创建，并立即为所有槽位建立连接
+     *
+     * @param inetSocketAddress 服务地址
+     * @param connector         建立新连接
+     * @return 连接池
+     */
+    ChannelPool getPool(InetSocketAddress inetSocketAddress, Function<InetSocketAddress, CompletableFuture<Channel>> connector) {
+        return poolMap.computeIfAbsent(inetSocketAddress.toString(),
+                k -> new ChannelPool(inetSocketAddress, poolSize, selection, connector));
     }
 }
@@ -3,18 +3,23 @@ package one.whr.remote.transport.client;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
-import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
-import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import lombok.extern.slf4j.Slf4j;
+import one.whr.config.RpcServiceConfig;
 import one.whr.enums.CompressTypeEnum;
+import one.whr.enums.RpcConfigEnum;
+import one.whr.enums.RpcErrorEnum;
+import one.whr.enums.RpcResponseCodeEnum;
 import one.whr.enums.SerializationEnum;
+import one.whr.exception.RpcException;
 import one.whr.extension.ExtensionLoader;
 import one.whr.factory.SingletonFactory;
 import one.whr.registry.ServiceDiscovery;
@@ -22,108 +27,395 @@ import one.whr.remote.dto.RpcMessage;
 import one.whr.remote.dto.RpcRequest;
 import one.whr.remote.dto.RpcResponse;
 import one.whr.remote.transport.RpcRequestTransport;
-import one.whr.remote.transport.codec.RpcMessageDecoder;
-import one.whr.remote.transport.codec.RpcMessageEncoder;
+import one.whr.remote.transport.netty.NettyTransport;
+import one.whr.remote.transport.netty.NettyTransports;
+import one.whr.remote.transport.netty.TransportOptions;
+import one.whr.utils.PropertiesUtils;
 import one.whr.utils.RpcConstants;
+import one.whr.utils.concurrent.threadpool.CustomThreadPoolConfig;
+import one.whr.utils.concurrent.threadpool.ThreadPoolFactoryUtil;
 
 import java.net.InetSocketAddress;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
 public class RpcClient implements RpcRequestTransport {
+    private static final long TIMEOUT_TICK_MILLIS = 10;
+
+    private static final int DEFAULT_MAX_CONSECUTIVE_TIMEOUTS = 3;
+
+    private static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private static final int DEFAULT_OVERLOAD_RETRIES = 1;
+
     private final Bootstrap bootstrap;
     private final EventLoopGroup eventLoopGroup;
-    private final UnprocessedRequestMap unprocessedRequests;
     private final ChannelProvider channelProvider;
     private final ServiceDiscovery serviceDiscovery;
 
+    // 等待响应的请求的超时检查，每个请求一个定时任务，收到响应后取消
+    private final HashedWheelTimer timeoutTimer;
+
+    // 异步调用结果的回调线程池，没有配置rpc.client.callback-threads时为null，回调直接在EventLoop中执行
+    private final ExecutorService callbackExecutor;
+
+    // 请求没有指定序列化和压缩方式时使用的默认值，来自rpc.properties
+    private final byte defaultCodec;
+    private final byte defaultCompress;
+
+    // 一个连接上连续这么多请求超时且期间没有收到任何消息时，认为连接已经失效并关闭，0表示不检查
+    private final int maxConsecutiveTimeouts;
+
+    // 服务端返回OVERLOADED时换其他节点重试的次数，请求没有被处理过，重试是安全的
+    private final int overloadRetries;
+
     public RpcClient() {
+        this(ExtensionLoader.getExtensionLoader(ServiceDiscovery.class).getExtension("zk"));
+    }
+
+    public RpcClient(ServiceDiscovery serviceDiscovery) {
         // 每个EventLoopGroup里包括一个或多个EventLoop，每个EventLoop中维护一个Selector实例。
-        eventLoopGroup = new NioEventLoopGroup();  // 默认的线程数是cpu核数的两倍
+        // Linux上默认使用epoll，其他平台使用nio
+        NettyTransport transport = NettyTransports.select();
+        // 默认的线程数是cpu核数的两倍
+        eventLoopGroup = transport.newEventLoopGroup(PropertiesUtils.getRpcIntProperty(RpcConfigEnum.CLIENT_IO_THREADS, 0));
         bootstrap = new Bootstrap();
 //        KryoSerializer kryoSerializer = new KryoSerializer();
         bootstrap.group(eventLoopGroup)
-                .channel(NioSocketChannel.class)
+                .channel(transport.socketChannelClass())
                 .handler(new LoggingHandler(LogLevel.INFO))
-                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000)
-                .handler(new ChannelInitializer<SocketChannel>() {
-                    @Override
-                    public void initChannel(SocketChannel ch) {
-                        ch.pipeline()
-                                .addLast(new IdleStateHandler(0, 0, 0, TimeUnit.SECONDS))
-                                .addLast(new RpcMessageEncoder())  // outbound
-                                .addLast(new RpcMessageDecoder())  // inbound
-                                .addLast(new RpcClientHandler());  // inbound
-                    }
-                });
-        this.unprocessedRequests = SingletonFactory.getInstance(UnprocessedRequestMap.class);
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS,
+                        PropertiesUtils.getRpcIntProperty(RpcConfigEnum.CLIENT_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT_MILLIS))
+                .handler(new RpcClientInitializer());
+        // allocator、buffer、TCP_NODELAY等与服务端共用的选项，来自rpc.transport.*
+        new TransportOptions().configure(bootstrap);
+        transport.configure(bootstrap);
         this.channelProvider = SingletonFactory.getInstance(ChannelProvider.class);
-        this.serviceDiscovery = ExtensionLoader.getExtensionLoader(ServiceDiscovery.class).getExtension("zk");
+        this.serviceDiscovery = serviceDiscovery;
+        // 离开注册中心的提供者不再保留连接池，也不再重连
+        serviceDiscovery.addRemovalListener(channelProvider::remove);
+        this.timeoutTimer = new HashedWheelTimer(new DefaultThreadFactory("rpc-client-timeout", true),
+                TIMEOUT_TICK_MILLIS, TimeUnit.MILLISECONDS);
+        this.callbackExecutor = createCallbackExecutor();
+        this.defaultCodec = SerializationEnum.getCode(
+                PropertiesUtils.getRpcProperty(RpcConfigEnum.SERIALIZATION, SerializationEnum.KRYO.getName()));
+        this.defaultCompress = CompressTypeEnum.getCode(
+                PropertiesUtils.getRpcProperty(RpcConfigEnum.COMPRESS, CompressTypeEnum.GZIP.getName()));
+        this.maxConsecutiveTimeouts = PropertiesUtils.getRpcIntProperty(
+                RpcConfigEnum.CLIENT_MAX_CONSECUTIVE_TIMEOUTS, DEFAULT_MAX_CONSECUTIVE_TIMEOUTS);
+        this.overloadRetries = PropertiesUtils.getRpcIntProperty(RpcConfigEnum.CLIENT_OVERLOAD_RETRIES, DEFAULT_OVERLOAD_RETRIES);
     }
 
     @Override
     public Object sendRpcRequest(RpcRequest rpcRequest) throws ExecutionException, InterruptedException {
         CompletableFuture<RpcResponse<Object>> resultFuture = new CompletableFuture<>();
+        // 超时时间从这里开始计算，查找服务和建立连接的时间也算在内
+        long deadline = rpcRequest.getTimeout() > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(rpcRequest.getTimeout()) : 0;
 
         // 获取服务地址
+        InetSocketAddress inetSocketAddress = lookupService(rpcRequest);
+        send(rpcRequest, inetSocketAddress, overloadRetries > 0
+                ? retryOnOverload(rpcRequest, inetSocketAddress, resultFuture, deadline, overloadRetries, null)
+                : resultFuture, deadline);
+        return resultFuture;
+    }
+
+    /**
+     * @return 这一次发送使用的future，服务端返回OVERLOADED时换一个还没有尝试过的节点重试，其他结果直接交给resultFuture
+     */
+    private CompletableFuture<RpcResponse<Object>> retryOnOverload(RpcRequest rpcRequest, InetSocketAddress address,
+                                                                   CompletableFuture<RpcResponse<Object>> resultFuture,
+                                                                   long deadline, int retries, Set<InetSocketAddress> excluded) {
+        CompletableFuture<RpcResponse<Object>> attemptFuture = new CompletableFuture<>();
+        attemptFuture.whenComplete((response, e) -> {
+            if (e == null && response != null && retries > 0
+                    && Objects.equals(RpcResponseCodeEnum.OVERLOADED.getCode(), response.getCode())) {
+                // whenComplete会吞掉回调中的异常，重试失败时必须自己完成resultFuture，否则调用方一直等到超时
+                try {
+                    if (retry(rpcRequest, address, resultFuture, deadline, retries, excluded)) {
+                        return;
+                    }
+                } catch (Throwable ex) {
+                    resultFuture.completeExceptionally(ex);
+                    return;
+                }
+            }
+            if (e != null) {
+                resultFuture.completeExceptionally(e);
+            } else {
+                resultFuture.complete(response);
+            }
+        });
+        return attemptFuture;
+    }
+
+    /**
+     * @return 是否找到了还没有尝试过的节点并重新发送
+     */
+    private boolean retry(RpcRequest rpcRequest, InetSocketAddress address, CompletableFuture<RpcResponse<Object>> resultFuture,
+                          long deadline, int retries, Set<InetSocketAddress> excluded) {
+        Set<InetSocketAddress> tried = excluded == null ? new HashSet<>() : excluded;
+        tried.add(address);
+        InetSocketAddress next = null;
+        try {
+            next = serviceDiscovery.lookupService(rpcRequest, tried);
+        } catch (RuntimeException ex) {
+            log.warn("fail to look up another provider of [{}]", rpcRequest.getRpcServiceName(), ex);
+        }
+        if (next == null) {
+            return false;
+        }
+        log.warn("[{}] is overloaded, retry [{}#{}] on [{}]", address, rpcRequest.getInterfaceName(),
+                rpcRequest.getMethodDescription(), next);
+        send(rpcRequest, next, retryOnOverload(rpcRequest, next, resultFuture, deadline, retries - 1, tried), deadline);
+        return true;
+    }
+
+    /**
+     * 选中的地址正在关闭时，注册中心的变化可能还没有通知到客户端，换一个没有发送过GOAWAY的地址
+     */
+    private InetSocketAddress lookupService(RpcRequest rpcRequest) {
         InetSocketAddress inetSocketAddress = serviceDiscovery.lookupService(rpcRequest);
+        if (inetSocketAddress != null && channelProvider.isGoingAway(inetSocketAddress)) {
+            InetSocketAddress other = serviceDiscovery.lookupService(rpcRequest, channelProvider.getGoingAwayAddresses());
+            if (other != null) {
+                return other;
+            }
+        }
+        return inetSocketAddress;
+    }
+
+    private void send(RpcRequest rpcRequest, InetSocketAddress inetSocketAddress, CompletableFuture<RpcResponse<Object>> resultFuture,
+                      long deadline) {
+        RpcMessage rpcMessage = RpcMessage.builder()
+                .data(rpcRequest)
+                .codec(rpcRequest.getCodec() != 0 ? rpcRequest.getCodec() : defaultCodec)
+                .compress(rpcRequest.getCompress() != 0 ? rpcRequest.getCompress() : defaultCompress)
+                .messageType(RpcConstants.REQUEST_TYPE)
+                .build();
+
+        // 有已经连接的channel时直接发送，否则在连接建立后发送，调用方不等待连接
+        ChannelPool channelPool = channelProvider.getPool(inetSocketAddress, this::connect);
+        Channel channel = channelPool.select();
+        if (channel != null) {
+            sendRpcMessage(channel, rpcMessage, resultFuture, deadline);
+        } else {
+            // 等待连接的时间也算在超时时间内，连接超时时间更长时调用方在自己的超时时间结束
+            Timeout timeout = null;
+            if (deadline != 0) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    resultFuture.completeExceptionally(timeoutException(rpcRequest));
+                    return;
+                }
+                timeout = timeoutTimer.newTimeout(
+                        t -> resultFuture.completeExceptionally(timeoutException(rpcRequest)), remaining, TimeUnit.MILLISECONDS);
+            }
+            Timeout connectTimeout = timeout;
+            channelPool.acquire().whenComplete((connected, e) -> {
+                if (connectTimeout != null) {
+                    connectTimeout.cancel();
+                }
+                if (resultFuture.isDone()) {
+                    return;
+                }
+                if (e != null) {
+                    resultFuture.completeExceptionally(e);
+                } else {
+                    sendRpcMessage(connected, rpcMessage, resultFuture, deadline);
+                }
+            });
+        }
+    }
+
+    /**
+     * 请求ID的分配和记录都在channel的EventLoop中进行，UnprocessedRequestMap因此不需要同步
+     */
+    private void sendRpcMessage(Channel channel, RpcMessage rpcMessage, CompletableFuture<RpcResponse<Object>> resultFuture,
+                                long deadline) {
+        EventLoop eventLoop = channel.eventLoop();
+        if (eventLoop.inEventLoop()) {
+            writeRequest(channel, rpcMessage, resultFuture, deadline);
+        } else {
+            try {
+                eventLoop.execute(() -> writeRequest(channel, rpcMessage, resultFuture, deadline));
+            } catch (RejectedExecutionException e) {
+                resultFuture.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * 连接的请求窗口已满或连接不可写时请求排队，排队的时间也算在超时时间内
+     */
+    private void writeRequest(Channel channel, RpcMessage rpcMessage, CompletableFuture<RpcResponse<Object>> resultFuture,
+                              long deadline) {
+        RpcRequest rpcRequest = (RpcRequest) rpcMessage.getData();
+        long remaining = 0;
+        if (deadline != 0) {
+            remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                resultFuture.completeExceptionally(timeoutException(rpcRequest));
+                return;
+            }
+        }
 
-        // 根据服务地址创建channel
-        Channel channel = getChannel(inetSocketAddress);
-        if (channel.isActive()) {
-            // 将请求存入map
-            unprocessedRequests.put(rpcRequest.getRequestId(), resultFuture);
-            RpcMessage rpcMessage = RpcMessage.builder()
-                    .data(rpcRequest)
-                    .codec(SerializationEnum.KRYO.getCode())
-                    .compress(CompressTypeEnum.GZIP.getCode())
-                    .messageType(RpcConstants.REQUEST_TYPE)
-                    .build();
-            channel.writeAndFlush(rpcMessage)
-                    .addListener((ChannelFutureListener) future -> {
-                        if (future.isSuccess()) {
-                            log.info("message sent: [{}]", rpcMessage);
+        UnprocessedRequestMap unprocessedRequests = channel.attr(UnprocessedRequestMap.KEY).get();
+        if (remaining > 0) {
+            Timeout timeout = timeoutTimer.newTimeout(
+                    t -> expire(channel, rpcMessage, resultFuture, rpcRequest), remaining, TimeUnit.MILLISECONDS);
+            resultFuture.whenComplete((response, e) -> timeout.cancel());
+        }
+        if (!unprocessedRequests.submit(channel, resultFuture,
+                () -> doWriteRequest(channel, rpcMessage, resultFuture, deadline, unprocessedRequests))) {
+            resultFuture.completeExceptionally(new RpcException(RpcErrorEnum.CLIENT_REQUEST_REJECTED,
+                    channel.remoteAddress() + ", interfaceName:" + rpcRequest.getInterfaceName()));
+        }
+    }
+
+    private void doWriteRequest(Channel channel, RpcMessage rpcMessage, CompletableFuture<RpcResponse<Object>> resultFuture,
+                                long deadline, UnprocessedRequestMap unprocessedRequests) {
+        RpcRequest rpcRequest = (RpcRequest) rpcMessage.getData();
+        if (deadline != 0) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                resultFuture.completeExceptionally(timeoutException(rpcRequest));
+                return;
+            }
+            // 服务端看到的是剩余的时间
+            rpcRequest.setTimeout(remaining);
+        }
+        // 将请求存入map
+        int requestId = unprocessedRequests.register(resultFuture);
+        rpcMessage.setRequestId(requestId);
+        channel.writeAndFlush(rpcMessage)
+                .addListener((ChannelFutureListener) future -> {
+                    if (future.isSuccess()) {
+                        log.debug("message sent: [{}]", rpcMessage);
+                    } else {
+                        unprocessedRequests.remove(requestId);
+                        if (future.cause() instanceof EncoderException) {
+                            // 只是这个请求无法编码，连接仍然可用
+                            unprocessedRequests.drain(channel);
                         } else {
                             future.channel().close();
-                            resultFuture.completeExceptionally(future.cause());
-                            log.error("Send message failed", future.cause());
                         }
-                    });
-        } else {
-            throw new IllegalStateException();
+                        resultFuture.completeExceptionally(future.cause());
+                        log.error("Send message failed", future.cause());
+                    }
+                });
+    }
+
+    /**
+     * 定时器线程中执行，pending表只在EventLoop中访问，所以先切换到EventLoop再移除
+     * 还在排队的请求没有分配ID，只需要结束future，之后不会再写出
+     */
+    private void expire(Channel channel, RpcMessage rpcMessage, CompletableFuture<RpcResponse<Object>> resultFuture, RpcRequest rpcRequest) {
+        Runnable expiry = () -> {
+            UnprocessedRequestMap unprocessedRequests = channel.attr(UnprocessedRequestMap.KEY).get();
+            resultFuture.completeExceptionally(timeoutException(rpcRequest));
+            if (unprocessedRequests.remove(rpcMessage.getRequestId(), resultFuture)) {
+                if (maxConsecutiveTimeouts > 0 && unprocessedRequests.timedOut() >= maxConsecutiveTimeouts) {
+                    // 连接池在下次选择连接时移出这个连接并重新建立
+                    log.warn("[{}] requests timed out in a row on [{}], close it", maxConsecutiveTimeouts, channel);
+                    channel.close();
+                } else {
+                    unprocessedRequests.drain(channel);
+                }
+            }
+        };
+        try {
+            channel.eventLoop().execute(expiry);
+        } catch (RejectedExecutionException e) {
+            resultFuture.completeExceptionally(timeoutException(rpcRequest));
         }
-        return resultFuture;
     }
 
+    private static RpcException timeoutException(RpcRequest rpcRequest) {
+        return new RpcException(RpcErrorEnum.REQUEST_TIMEOUT,
+                "interfaceName:" + rpcRequest.getInterfaceName() + ", method:" + rpcRequest.getMethodDescription());
+    }
+
+    /**
+     * 从地址的连接池中选择一个连接，连接池第一次使用时为所有槽位建立连接，只等待其中最先建立的一个
+     * 阻塞调用方，只在预热等不在请求路径上的地方使用
+     *
+     * @param inetSocketAddress 服务地址
+     * @return 已经连接的channel
+     */
     public Channel getChannel(InetSocketAddress inetSocketAddress) throws ExecutionException, InterruptedException {
-        // 如果连接已经创建，直接拿来用
-        Channel channel = channelProvider.get(inetSocketAddress);
+        return channelProvider.getPool(inetSocketAddress, this::connect).acquire().get();
+    }
 
-        // 连接没有创建，先建立连接
-        if (channel == null) {
-            channel = doConnect(inetSocketAddress);
-            channelProvider.set(inetSocketAddress, channel);
-        }
-        return channel;
+    /**
+     * 预先建立服务的连接，避免第一次调用时等待连接
+     *
+     * @param rpcServiceConfig 服务配置
+     * @param serviceInterface 服务接口
+     */
+    public void warmUp(RpcServiceConfig rpcServiceConfig, Class<?> serviceInterface) throws ExecutionException, InterruptedException {
+        RpcRequest rpcRequest = RpcRequest.builder()
+                .interfaceName(serviceInterface.getName())
+                .group(rpcServiceConfig.getGroup())
+                .version(rpcServiceConfig.getVersion())
+                .build();
+        getChannel(serviceDiscovery.lookupService(rpcRequest));
     }
 
-    public Channel doConnect(InetSocketAddress inetSocketAddress) throws ExecutionException, InterruptedException {
+    /**
+     * 异步建立连接，失败时future以CLIENT_CONNECT_SERVER_FAILURE结束，超时由CONNECT_TIMEOUT_MILLIS控制
+     */
+    private CompletableFuture<Channel> connect(InetSocketAddress inetSocketAddress) {
         CompletableFuture<Channel> completableFuture = new CompletableFuture<>();
         bootstrap.connect(inetSocketAddress).addListener((ChannelFutureListener) future -> {
             if (future.isSuccess()) {
                 log.info("Client has connected to [{}] successfully", inetSocketAddress.toString());
                 completableFuture.complete(future.channel());
             } else {
-                throw new IllegalStateException();
+                completableFuture.completeExceptionally(
+                        new RpcException(RpcErrorEnum.CLIENT_CONNECT_SERVER_FAILURE, inetSocketAddress + ", " + future.cause()));
             }
         });
-        return completableFuture.get();
+        return completableFuture;
     }
 
 
+    private static ExecutorService createCallbackExecutor() {
+        int threads = PropertiesUtils.getRpcIntProperty(RpcConfigEnum.CLIENT_CALLBACK_THREADS, 0);
+        if (threads <= 0) {
+            return null;
+        }
+        CustomThreadPoolConfig config = new CustomThreadPoolConfig();
+        config.setCorePoolSize(threads);
+        config.setMaximumPoolSize(threads);
+        // 回调不能被拒绝，否则调用方的future永远不会完成
+        config.setWorkQueue(new LinkedBlockingQueue<>());
+        return ThreadPoolFactoryUtil.createCustomThreadPoolIfAbsent(config, "rpc-client-callback", true);
+    }
+
+    public Executor getCallbackExecutor() {
+        return callbackExecutor;
+    }
+
+    public byte getDefaultCodec() {
+        return defaultCodec;
+    }
+
+    public byte getDefaultCompress() {
+        return defaultCompress;
+    }
+
     public void close() {
+        timeoutTimer.stop();
         eventLoopGroup.shutdownGracefully();
     }
 }
@@ -8,41 +8,50 @@ import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.ReferenceCountUtil;
 import lombok.extern.slf4j.Slf4j;
-import one.whr.enums.CompressTypeEnum;
-import one.whr.enums.SerializationEnum;
 import one.whr.extension.ExtensionLoader;
+import one.whr.enums.RpcErrorEnum;
+import one.whr.exception.RpcException;
 import one.whr.factory.SingletonFactory;
 import one.whr.remote.dto.RpcMessage;
 import one.whr.remote.dto.RpcResponse;
 import one.whr.remote.transport.RpcRequestTransport;
 import one.whr.utils.RpcConstants;
 
-import java.net.InetSocketAddress;
 
 @Slf4j
 public class RpcClientHandler extends ChannelInboundHandlerAdapter {
 
     private final UnprocessedRequestMap unprocessedRequests;
     private final RpcClient rpcClient;
+    private final ChannelProvider channelProvider;
 
-    public RpcClientHandler() {
-        this.unprocessedRequests = SingletonFactory.getInstance(UnprocessedRequestMap.class);
+    public RpcClientHandler(UnprocessedRequestMap unprocessedRequests) {
+        this.unprocessedRequests = unprocessedRequests;
 //        this.rpcClient = SingletonFactory.getInstance(RpcClient.class);
         this.rpcClient = (RpcClient) ExtensionLoader.getExtensionLoader(RpcRequestTransport.class).getExtension("netty");
+        this.channelProvider = SingletonFactory.getInstance(ChannelProvider.class);
     }
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) {
         try {
-            log.info("client receive message: [{}]", msg);
+            log.debug("client receive message: [{}]", msg);
             if (msg instanceof RpcMessage) {
                 RpcMessage tmp = (RpcMessage) msg;
                 byte messageType = tmp.getMessageType();
                 if (messageType == RpcConstants.HEARTBEAT_PONG_TYPE) {
-                    log.info("heart [{}]", tmp.getData());
+                    log.debug("heart [{}]", tmp.getData());
+                    unprocessedRequests.received();
                 } else if (messageType == RpcConstants.RESPONSE_TYPE) {
                     RpcResponse<Object> rpcResponse = (RpcResponse<Object>) tmp.getData();
-                    unprocessedRequests.complete(rpcResponse); // todo
+                    unprocessedRequests.complete(tmp.getRequestId(), rpcResponse);
+                    // 窗口中空出了位置
+                    unprocessedRequests.drain(ctx.channel());
+                } else if (messageType == RpcConstants.GOAWAY_TYPE) {
+                    // 服务端正在关闭，已经发出的请求仍然会得到响应，全部完成后由客户端关闭连接
+                    channelProvider.goAway(ctx.channel());
+                    unprocessedRequests.goAway();
+                    unprocessedRequests.drain(ctx.channel());
                 }
             }
         } finally {
@@ -55,12 +64,17 @@ public class RpcClientHandler extends ChannelInboundHandlerAdapter {
         if (event instanceof IdleStateEvent) {
             // when idle, send ping
             IdleState state = ((IdleStateEvent) event).state();
-            if (state == IdleState.WRITER_IDLE) {
-                log.info("write idle happens: [{}]", ctx.channel().remoteAddress());
-                Channel channel = rpcClient.getChannel((InetSocketAddress) ctx.channel().remoteAddress());
+            if (state == IdleState.READER_IDLE) {
+                // 几个心跳周期都没有收到pong或响应，关闭后连接池在下一次选择时移出并重新建立连接
+                log.warn("no heartbeat or response from [{}], close it", ctx.channel());
+                ctx.close();
+            } else if (state == IdleState.WRITER_IDLE) {
+                log.debug("write idle happens: [{}]", ctx.channel().remoteAddress());
+                // 连接池中每个连接各自发送心跳
+                Channel channel = ctx.channel();
                 RpcMessage rpcMessage = new RpcMessage();
-                rpcMessage.setCodec(SerializationEnum.KRYO.getCode());
-                rpcMessage.setCompress(CompressTypeEnum.GZIP.getCode());
+                rpcMessage.setCodec(rpcClient.getDefaultCodec());
+                rpcMessage.setCompress(rpcClient.getDefaultCompress());
                 rpcMessage.setMessageType(RpcConstants.HEARTBEAT_PING_TYPE);
                 rpcMessage.setData(RpcConstants.PING);
                 channel.writeAndFlush(rpcMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
@@ -70,6 +84,23 @@ public class RpcClientHandler extends ChannelInboundHandlerAdapter {
         }
     }
 
+    /**
+     * 待写出的数据降到低水位以下，写出排队的请求
+     */
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            unprocessedRequests.drain(ctx.channel());
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        unprocessedRequests.failAll(new RpcException(RpcErrorEnum.CONNECTION_CLOSED, ctx.channel().remoteAddress().toString()));
+        super.channelInactive(ctx);
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         log.error("client catch exception：", cause);
@@ -0,0 +1,65 @@
+package one.whr.remote.transport.client;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+import one.whr.enums.RpcConfigEnum;
+import one.whr.remote.transport.codec.RpcMessageDecoder;
+import one.whr.remote.transport.codec.RpcMessageEncoder;
+import one.whr.utils.PropertiesUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 客户端channel的pipeline配置，不依赖具体的channel类型，
+ * 因此除了socket连接之外也可以用于netty的local transport
+ */
+public class RpcClientInitializer extends ChannelInitializer<Channel> {
+    private static final int DEFAULT_MAX_IN_FLIGHT = 1024;
+
+    // 小于服务端30s的读空闲关闭时间，空闲的连接不会被服务端关闭
+    private static final int DEFAULT_HEARTBEAT_INTERVAL_MILLIS = 10_000;
+
+    // 连续这么多个心跳周期没有收到pong或响应时关闭连接
+    private static final int HEARTBEAT_MAX_MISSED = 3;
+
+    // 一次flush最多合并的请求数，0表示每个请求单独flush
+    private final int flushConsolidation;
+
+    // 每个连接的请求窗口和排队上限
+    private final int maxInFlight;
+    private final int maxQueued;
+
+    // 没有写出时发送心跳的间隔(ms)，0表示不发送心跳也不检查读空闲
+    private final int heartbeatInterval;
+
+    public RpcClientInitializer() {
+        this(PropertiesUtils.getRpcIntProperty(RpcConfigEnum.TRANSPORT_FLUSH_CONSOLIDATION, 0));
+    }
+
+    public RpcClientInitializer(int flushConsolidation) {
+        this.flushConsolidation = flushConsolidation;
+        this.maxInFlight = PropertiesUtils.getRpcIntProperty(RpcConfigEnum.CLIENT_MAX_IN_FLIGHT, DEFAULT_MAX_IN_FLIGHT);
+        this.maxQueued = PropertiesUtils.getRpcIntProperty(RpcConfigEnum.CLIENT_MAX_QUEUED, maxInFlight);
+        this.heartbeatInterval = PropertiesUtils.getRpcIntProperty(RpcConfigEnum.CLIENT_HEARTBEAT_INTERVAL,
+                DEFAULT_HEARTBEAT_INTERVAL_MILLIS);
+    }
+
+    @Override
+    protected void initChannel(Channel ch) {
+        UnprocessedRequestMap unprocessedRequests = new UnprocessedRequestMap(maxInFlight, maxQueued);
+        ch.attr(UnprocessedRequestMap.KEY).set(unprocessedRequests);
+        ChannelPipeline p = ch.pipeline();
+        if (flushConsolidation > 0) {
+            // 放在最前面，调用方线程提交的多个请求在EventLoop的下一个任务中一起flush，一次writev写出
+            p.addLast(new FlushConsolidationHandler(flushConsolidation, true));
+        }
+        // 写空闲时发送ping，读空闲说明服务端已经不可达(半开连接)，由RpcClientHandler关闭后移出连接池
+        p.addLast(new IdleStateHandler((long) heartbeatInterval * HEARTBEAT_MAX_MISSED, heartbeatInterval, 0, TimeUnit.MILLISECONDS))
+                .addLast(new RpcMessageEncoder())  // outbound
+                .addLast(new RpcMessageDecoder())  // inbound
+                .addLast(new RpcClientHandler(unprocessedRequests));  // inbound
+    }
+}
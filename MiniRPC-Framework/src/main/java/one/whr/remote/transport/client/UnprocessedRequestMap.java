@@ -1,30 +1,220 @@
 package one.whr.remote.transport.client;
 
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import lombok.extern.slf4j.Slf4j;
 import one.whr.remote.dto.RpcResponse;
 
-import java.util.Map;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 处理请求的记录map
+ * 每个连接一个实例，请求ID是连接内递增的序号，写在消息头中，服务端在响应的消息头中原样返回
+ * 同时也是连接的请求窗口：已经写出还没有收到响应的请求数达到上限或连接不可写时，新的请求排队等待，
+ * 队列也满时直接拒绝，慢的服务端不会让客户端的待写出数据无限增长
+ * 收到服务端的GOAWAY之后，等待响应和排队的请求都处理完时关闭连接
+ * 所有方法都只在channel的EventLoop中调用，因此不需要同步
  */
+@Slf4j
 public class UnprocessedRequestMap {
+
+    public static final AttributeKey<UnprocessedRequestMap> KEY = AttributeKey.valueOf("unprocessedRequests");
+
     // used for asynchronous computation
-    private static final Map<String, CompletableFuture<RpcResponse<Object>>> UNPROCESSED_RESPONSE_FUTURES = new ConcurrentHashMap<>();
+    private final IntObjectMap<CompletableFuture<RpcResponse<Object>>> unprocessedResponseFutures = new IntObjectHashMap<>();
+
+    // 0留给心跳等不需要响应的消息
+    private int nextRequestId = 1;
+
+    // 窗口已满或连接不可写时等待写出的请求
+    private final ArrayDeque<QueuedRequest> queuedRequests = new ArrayDeque<>();
+
+    // 已经写出还没有收到响应的请求数上限，0表示不做流量控制
+    private final int maxInFlight;
+
+    // 最多排队等待写出的请求数
+    private final int maxQueued;
+
+    // 等待响应和排队的请求数，连接池在其他线程中读取，用于选择最空闲的连接
+    private volatile int pendingCount;
+
+    // 上次收到消息之后连续超时的请求数，用于判断连接是否已经失效
+    private int consecutiveTimeouts;
+
+    // 服务端正在关闭
+    private boolean goingAway;
+
+    public UnprocessedRequestMap() {
+        this(0, 0);
+    }
+
+    public UnprocessedRequestMap(int maxInFlight, int maxQueued) {
+        this.maxInFlight = maxInFlight;
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * 窗口未满且连接可写时立即写出，否则排队等待
+     *
+     * @param channel 连接
+     * @param future  等待响应的future，排队期间超时的请求不再写出
+     * @param write   分配ID、记录并写出请求
+     * @return 队列已满时返回false，请求没有写出也没有排队
+     */
+    public boolean submit(Channel channel, CompletableFuture<RpcResponse<Object>> future, Runnable write) {
+        if (queuedRequests.isEmpty() && canWrite(channel)) {
+            write.run();
+            return true;
+        }
+        if (queuedRequests.size() >= maxQueued) {
+            return false;
+        }
+        queuedRequests.add(new QueuedRequest(future, write));
+        updatePendingCount();
+        return true;
+    }
+
+    /**
+     * 收到响应、请求超时或连接恢复可写之后，写出排队的请求
+     * 服务端正在关闭时，没有需要等待的请求就关闭连接，服务端据此知道这个客户端已经处理完
+     *
+     * @param channel 连接
+     */
+    public void drain(Channel channel) {
+        while (!queuedRequests.isEmpty() && canWrite(channel)) {
+            QueuedRequest queued = queuedRequests.poll();
+            updatePendingCount();
+            if (!queued.future.isDone()) {
+                queued.write.run();
+            }
+        }
+        if (goingAway && unprocessedResponseFutures.isEmpty() && queuedRequests.isEmpty()) {
+            log.info("all requests on [{}] completed after GOAWAY, close it", channel);
+            channel.close();
+        }
+    }
+
+    /**
+     * 收到服务端的GOAWAY
+     */
+    public void goAway() {
+        goingAway = true;
+    }
+
+    private boolean canWrite(Channel channel) {
+        return maxInFlight <= 0 || (channel.isWritable() && unprocessedResponseFutures.size() < maxInFlight);
+    }
 
-    public void put(String requestId, CompletableFuture<RpcResponse<Object>> future) {
-        UNPROCESSED_RESPONSE_FUTURES.put(requestId, future);
+    /**
+     * 为请求分配ID并记录
+     *
+     * @param future 等待响应的future
+     * @return 请求ID
+     */
+    public int register(CompletableFuture<RpcResponse<Object>> future) {
+        int requestId = nextRequestId();
+        // 序号回绕后跳过仍在等待响应的ID
+        while (unprocessedResponseFutures.containsKey(requestId)) {
+            requestId = nextRequestId();
+        }
+        unprocessedResponseFutures.put(requestId, future);
+        updatePendingCount();
+        return requestId;
+    }
+
+    public CompletableFuture<RpcResponse<Object>> remove(int requestId) {
+        CompletableFuture<RpcResponse<Object>> future = unprocessedResponseFutures.remove(requestId);
+        updatePendingCount();
+        return future;
     }
 
-    public void complete(RpcResponse<Object> rpcResponse) {
-        CompletableFuture<RpcResponse<Object>> future = UNPROCESSED_RESPONSE_FUTURES.remove(rpcResponse.getRequestId());
+    /**
+     * 只有ID仍然对应这个future时才移除，超时的请求不会误删序号回绕后复用了同一ID的新请求
+     *
+     * @return 是否移除了，已经收到响应时返回false
+     */
+    public boolean remove(int requestId, CompletableFuture<RpcResponse<Object>> future) {
+        if (unprocessedResponseFutures.get(requestId) == future) {
+            remove(requestId);
+            return true;
+        }
+        return false;
+    }
+
+    public void complete(int requestId, RpcResponse<Object> rpcResponse) {
+        CompletableFuture<RpcResponse<Object>> future = remove(requestId);
+        received();
         if (future != null) {
             future.complete(rpcResponse);
         } else {
-            throw new IllegalStateException();
+            log.warn("no pending request for response, requestId: [{}]", requestId);
         }
     }
 
+    /**
+     * 连接断开时，所有还在等待和排队的请求都不会再收到响应
+     *
+     * @param cause 失败原因
+     */
+    public void failAll(Throwable cause) {
+        if (unprocessedResponseFutures.isEmpty() && queuedRequests.isEmpty()) {
+            return;
+        }
+        List<CompletableFuture<RpcResponse<Object>>> futures = new ArrayList<>(unprocessedResponseFutures.values());
+        for (QueuedRequest queued : queuedRequests) {
+            futures.add(queued.future);
+        }
+        unprocessedResponseFutures.clear();
+        queuedRequests.clear();
+        pendingCount = 0;
+        for (CompletableFuture<RpcResponse<Object>> future : futures) {
+            future.completeExceptionally(cause);
+        }
+    }
 
+    public int pendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * 收到响应或心跳，连接仍然有效
+     */
+    public void received() {
+        consecutiveTimeouts = 0;
+    }
+
+    /**
+     * @return 上次收到消息之后连续超时的请求数
+     */
+    public int timedOut() {
+        return ++consecutiveTimeouts;
+    }
+
+    private void updatePendingCount() {
+        pendingCount = unprocessedResponseFutures.size() + queuedRequests.size();
+    }
+
+    private int nextRequestId() {
+        int requestId = nextRequestId++;
+        if (nextRequestId == 0) {
+            nextRequestId = 1;
+        }
+        return requestId;
+    }
+
+    private static final class QueuedRequest {
+        private final CompletableFuture<RpcResponse<Object>> future;
+
+        private final Runnable write;
+
+        private QueuedRequest(CompletableFuture<RpcResponse<Object>> future, Runnable write) {
+            this.future = future;
+            this.write = write;
+        }
+    }
 }
@@ -0,0 +1,118 @@
+package one.whr.remote.transport.codec;
+
+import one.whr.enums.RpcConfigEnum;
+import one.whr.utils.PropertiesUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 决定一条消息是否值得压缩
+ * 按key（请求为服务接口名，响应为结果类型）统计消息体的平均大小和压缩率，在序列化之前做出决定，
+ * 需要压缩的消息直接序列化进压缩流，不需要先序列化再复制出来压缩
+ * 平均大小小于阈值的key不压缩；开启adaptive时压缩后仍接近原大小的key也不压缩，只是每隔PROBE_INTERVAL条再试一次，
+ * 以便数据特征变化后恢复压缩；还没有统计的key先按原来的方式试探：序列化之后按实际大小决定，压缩后比原数据小才使用
+ * 每个编码器持有一个实例，只在channel的EventLoop中使用，不需要同步
+ */
+class AdaptiveCompression {
+
+    enum Decision {
+        // 不压缩
+        SKIP,
+        // 直接序列化进压缩流
+        COMPRESS,
+        // 先不压缩地序列化，按实际大小和压缩结果决定，并记录样本
+        PROBE
+    }
+
+    private static final int DEFAULT_THRESHOLD = 1024;
+
+    // 压缩后与压缩前的大小之比超过它就认为不值得压缩
+    private static final double MAX_WORTHWHILE_RATIO = 0.9;
+
+    // 新样本在平均值中的权重
+    private static final double SAMPLE_WEIGHT = 0.2;
+
+    private static final int PROBE_INTERVAL = 64;
+
+    private final int threshold;
+
+    private final boolean adaptive;
+
+    private final Map<String, Stats> stats = new HashMap<>();
+
+    AdaptiveCompression() {
+        this.threshold = PropertiesUtils.getRpcIntProperty(RpcConfigEnum.COMPRESS_THRESHOLD, DEFAULT_THRESHOLD);
+        this.adaptive = PropertiesUtils.getRpcBooleanProperty(RpcConfigEnum.COMPRESS_ADAPTIVE, true);
+    }
+
+    /**
+     * @param key 消息的统计key
+     * @return 序列化之前做出的决定
+     */
+    Decision decide(String key) {
+        Stats keyStats = stats.get(key);
+        if (keyStats == null) {
+            return Decision.PROBE;
+        }
+        if (keyStats.length < threshold) {
+            return Decision.SKIP;
+        }
+        if (!keyStats.sampled) {
+            return Decision.PROBE;
+        }
+        if (!adaptive || keyStats.ratio <= MAX_WORTHWHILE_RATIO) {
+            return Decision.COMPRESS;
+        }
+        return ++keyStats.skipped % PROBE_INTERVAL == 0 ? Decision.PROBE : Decision.SKIP;
+    }
+
+    /**
+     * 试探时，在消息体序列化之后按实际大小判断是否压缩
+     */
+    boolean shouldCompress(int length) {
+        return length >= threshold;
+    }
+
+    /**
+     * 记录没有压缩的消息体大小
+     */
+    void record(String key, int length) {
+        Stats keyStats = stats.get(key);
+        if (keyStats == null) {
+            stats.put(key, new Stats(length));
+        } else {
+            keyStats.length += (length - keyStats.length) * SAMPLE_WEIGHT;
+        }
+    }
+
+    /**
+     * 记录压缩前后的大小
+     */
+    void record(String key, int length, int compressedLength) {
+        record(key, length);
+        Stats keyStats = stats.get(key);
+        double sample = (double) compressedLength / length;
+        if (keyStats.sampled) {
+            keyStats.ratio += (sample - keyStats.ratio) * SAMPLE_WEIGHT;
+        } else {
+            keyStats.ratio = sample;
+            keyStats.sampled = true;
+        }
+    }
+
+    private static final class Stats {
+        private double length;
+
+        private double ratio;
+
+        // 是否已经有压缩率的样本
+        private boolean sampled;
+
+        private int skipped;
+
+        private Stats(double length) {
+            this.length = length;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package one.whr.remote.transport.codec;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import lombok.extern.slf4j.Slf4j;
@@ -14,11 +15,17 @@ import one.whr.remote.dto.RpcResponse;
 import one.whr.serialization.Serializer;
 import one.whr.utils.RpcConstants;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
 
+    // 还原请求中服务名称的连接内字典，只有服务端的解码器会用到
+    private final ServiceDictionary serviceDictionary = new ServiceDictionary();
+
     public RpcMessageDecoder() {
         // lengthFieldOffset: magic code is 4B, and version is 1B, and then full length. so value is 5
         // lengthFieldLength: full length is 4B. so value is 4
@@ -59,7 +66,7 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
         return decoded;
     }
 
-    private Object decodeFrame(ByteBuf in) {
+    private Object decodeFrame(ByteBuf in) throws IOException {
         checkMagicNumber(in);
         checkVersion(in);
         int fullLength = in.readInt();
@@ -70,6 +77,7 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
 
         RpcMessage rpcMessage = RpcMessage.builder()
                 .codec(codecType)
+                .compress(compressType)
                 .requestId(requestId)
                 .messageType(messageType)
                 .build();
@@ -83,24 +91,33 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
             return rpcMessage;
         }
 
+        if (messageType == RpcConstants.GOAWAY_TYPE) {
+            return rpcMessage;
+        }
+
         int bodyLength = fullLength - RpcConstants.HEAD_LENGTH;
         if (bodyLength > 0) {
-            byte[] body = new byte[bodyLength];
-            in.readBytes(body);
             String compressName = CompressTypeEnum.getName(compressType);
             Compress compressor = ExtensionLoader.getExtensionLoader(Compress.class).getExtension(compressName);
-            body = compressor.decompress(body);
 
             String codecName = SerializationEnum.getName(codecType);
-            log.info("codec name: [{}]", codecName);
+            log.debug("codec name: [{}]", codecName);
             Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class).getExtension(codecName);
-            if (messageType == RpcConstants.REQUEST_TYPE) {
-                RpcRequest request = serializer.deserialize(body, RpcRequest.class);
-                rpcMessage.setData(request);
-            }
-            if (messageType == RpcConstants.RESPONSE_TYPE) {
-                RpcResponse response = serializer.deserialize(body, RpcResponse.class);
-                rpcMessage.setData(response);
+
+            // 直接从帧中读取消息体，解压和反序列化都是流式的，不再复制出中间数组
+            try (InputStream body = compressor.decompress(new ByteBufInputStream(in.readSlice(bodyLength)))) {
+                if (messageType == RpcConstants.REQUEST_TYPE) {
+                    RpcRequest request = serviceDictionary.expand(serializer.deserialize(body, RpcRequest.class));
+                    rpcMessage.setData(request);
+                    // 从收到请求的时刻开始计算，排队等待处理的时间也算在内
+                    if (request.getTimeout() > 0) {
+                        rpcMessage.setDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(request.getTimeout()));
+                    }
+                }
+                if (messageType == RpcConstants.RESPONSE_TYPE) {
+                    RpcResponse<?> response = serializer.deserialize(body, RpcResponse.class);
+                    rpcMessage.setData(response);
+                }
             }
         }
         return rpcMessage;
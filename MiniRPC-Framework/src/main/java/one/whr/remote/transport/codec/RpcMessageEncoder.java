@@ -1,7 +1,9 @@
 package one.whr.remote.transport.codec;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.codec.MessageToByteEncoder;
 import lombok.extern.slf4j.Slf4j;
 import one.whr.compress.Compress;
@@ -9,16 +11,32 @@ import one.whr.enums.CompressTypeEnum;
 import one.whr.enums.SerializationEnum;
 import one.whr.extension.ExtensionLoader;
 import one.whr.remote.dto.RpcMessage;
+import one.whr.remote.dto.RpcRequest;
+import one.whr.remote.dto.RpcResponse;
 import one.whr.serialization.Serializer;
 import one.whr.utils.RpcConstants;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 
 @Slf4j
 public class RpcMessageEncoder extends MessageToByteEncoder<RpcMessage> {
 
-    private static final AtomicInteger ATOMIC_INTEGER = new AtomicInteger(0);
+    // 预分配buffer的上限，超过的部分仍然按需扩容
+    private static final int MAX_INITIAL_BUFFER_SIZE = 64 * 1024;
 
+    private static final int COPY_BUFFER_SIZE = 8 * 1024;
+
+    private int estimatedFrameLength = 256;
+
+    private final AdaptiveCompression adaptiveCompression = new AdaptiveCompression();
+
+    // 试探压缩时从byteBuf中读取消息体的中转数组，编码器只在一个线程中使用
+    private final byte[] copyBuffer = new byte[COPY_BUFFER_SIZE];
+
+    // 请求中服务名称的连接内字典，只有客户端的编码器会用到
+    private final ServiceDictionary serviceDictionary = new ServiceDictionary();
 
     /**
      * bytes
@@ -34,7 +52,9 @@ public class RpcMessageEncoder extends MessageToByteEncoder<RpcMessage> {
      * 4B  magic code（魔法数）   1B version（版本）   4B full length（消息长度）    1B messageType（消息类型）
      * 1B compress（压缩类型） 1B codec（序列化类型）    4B  requestId（请求的Id）
      * body（object类型数据）
-     * 流程： 首先写入消息头，然后将序列化的消息体压缩后放入消息中
+     * 流程： 首先写入消息头，按之前同类消息的大小和压缩率决定是否压缩，然后将消息体直接序列化进byteBuf或压缩流，
+     * 回填压缩类型，最后回填消息长度
+     * 请求中的服务名称通过连接内的服务字典只在第一次发送
      *
      * @param ctx        上下文
      * @param rpcMessage 消息
@@ -42,6 +62,8 @@ public class RpcMessageEncoder extends MessageToByteEncoder<RpcMessage> {
      */
     @Override
     protected void encode(ChannelHandlerContext ctx, RpcMessage rpcMessage, ByteBuf byteBuf) {
+        int frameStartIndex = byteBuf.writerIndex();
+        Object body = rpcMessage.getData();
         try {
             byteBuf.writeBytes(RpcConstants.MAGIC_NUMBER);  // 4 bytes
             byteBuf.writeByte(RpcConstants.VERSION);  // 1 byte
@@ -53,40 +75,152 @@ public class RpcMessageEncoder extends MessageToByteEncoder<RpcMessage> {
             byteBuf.writeByte(messageType);
 
             byteBuf.writeByte(rpcMessage.getCodec());  // 1 byte
-            byteBuf.writeByte(CompressTypeEnum.GZIP.getCode());  // 1 byte
-            byteBuf.writeInt(ATOMIC_INTEGER.getAndIncrement());  // 4 byte (requestId)
+            int compressFieldIndex = byteBuf.writerIndex();
+            byteBuf.writeByte(rpcMessage.getCompress());  // 1 byte
+            byteBuf.writeInt(rpcMessage.getRequestId());  // 4 byte (requestId)
 
             // write body
-            byte[] body = null;
-            int fullLength = RpcConstants.HEAD_LENGTH; // initially full length is body length
-
-            if (messageType != RpcConstants.HEARTBEAT_PING_TYPE && messageType != RpcConstants.HEARTBEAT_PONG_TYPE) {
+            if (messageType != RpcConstants.HEARTBEAT_PING_TYPE && messageType != RpcConstants.HEARTBEAT_PONG_TYPE
+                    && messageType != RpcConstants.GOAWAY_TYPE) {
                 String codecName = SerializationEnum.getName(rpcMessage.getCodec());
-                log.info("codec name: [{}]", codecName);
-
-                // 序列化
+                log.debug("codec name: [{}]", codecName);
                 Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class).getExtension(codecName);
-                body = serializer.serialize(rpcMessage.getData());
-
-                // 压缩
-                String compressName = CompressTypeEnum.getName(rpcMessage.getCompress());
-                Compress compressor = ExtensionLoader.getExtensionLoader(Compress.class).getExtension(compressName);
-                body = compressor.compress(body);
 
-                fullLength += body.length;
-            }
-            if (body != null) {
-                byteBuf.writeBytes(body);
+                if (messageType == RpcConstants.REQUEST_TYPE) {
+                    body = serviceDictionary.compact((RpcRequest) body);
+                }
+                byte compress = rpcMessage.getCompress();
+                String key = compressionKey(rpcMessage.getData());
+                AdaptiveCompression.Decision decision = compress == CompressTypeEnum.NONE.getCode()
+                        ? AdaptiveCompression.Decision.SKIP : adaptiveCompression.decide(key);
+                int bodyStartIndex = byteBuf.writerIndex();
+                if (decision == AdaptiveCompression.Decision.COMPRESS) {
+                    // 直接序列化进压缩流，消息体只写入一次
+                    Compress compressor = ExtensionLoader.getExtensionLoader(Compress.class)
+                            .getExtension(CompressTypeEnum.getName(compress));
+                    CountingOutputStream out = new CountingOutputStream(compressor.compress(new ByteBufOutputStream(byteBuf)));
+                    try (OutputStream closing = out) {
+                        serializer.serialize(body, closing);
+                    }
+                    adaptiveCompression.record(key, out.count, byteBuf.writerIndex() - bodyStartIndex);
+                } else {
+                    try (OutputStream out = new ByteBufOutputStream(byteBuf)) {
+                        serializer.serialize(body, out);
+                    }
+                    if (decision == AdaptiveCompression.Decision.PROBE) {
+                        compress = compressBody(compress, key, byteBuf, bodyStartIndex);
+                    } else {
+                        compress = CompressTypeEnum.NONE.getCode();
+                        adaptiveCompression.record(key, byteBuf.writerIndex() - bodyStartIndex);
+                    }
+                }
+                byteBuf.setByte(compressFieldIndex, compress);
             }
 
             // 最后写入总长
-            int writeIndex = byteBuf.writerIndex();
-            byteBuf.writerIndex(fullLengthFieldIndex);
-            byteBuf.writeInt(fullLength);
-            byteBuf.writerIndex(writeIndex);  // 复原writeIndex的位置
+            int fullLength = byteBuf.writerIndex() - frameStartIndex;
+            byteBuf.setInt(fullLengthFieldIndex, fullLength);
+            estimatedFrameLength = fullLength;
 
         } catch (Exception e) {
-            log.error("RpcRequest encode error, ", e);
+            // 丢弃已经写入的部分，避免发送不完整的帧
+            byteBuf.writerIndex(frameStartIndex);
+            if (body instanceof RpcRequest) {
+                serviceDictionary.discard((RpcRequest) body);
+            }
+            // 写出的promise因此失败，调用方立即得到错误，不会等到超时
+            throw new EncoderException("fail to encode message of type " + rpcMessage.getMessageType(), e);
+        }
+    }
+
+    /**
+     * 试探：消息体已经不压缩地写入，按实际大小决定是否压缩，需要压缩时从byteBuf中读出消息体，压缩结果追加在它后面，
+     * 比原数据小才把压缩结果移动到消息体的位置，否则丢弃压缩结果，发送未压缩的消息体
+     * 只用于还没有统计的key和压缩率低的key的定期重试，其他消息在序列化之前就已经决定
+     *
+     * @param compress       配置的压缩类型
+     * @param key            消息的统计key
+     * @param byteBuf        buffer，消息体已经从bodyStartIndex开始写入
+     * @param bodyStartIndex 消息体的起始位置
+     * @return 最终使用的压缩类型
+     */
+    private byte compressBody(byte compress, String key, ByteBuf byteBuf, int bodyStartIndex) throws IOException {
+        int bodyLength = byteBuf.writerIndex() - bodyStartIndex;
+        if (!adaptiveCompression.shouldCompress(bodyLength)) {
+            adaptiveCompression.record(key, bodyLength);
+            return CompressTypeEnum.NONE.getCode();
+        }
+
+        String compressName = CompressTypeEnum.getName(compress);
+        Compress compressor = ExtensionLoader.getExtensionLoader(Compress.class).getExtension(compressName);
+
+        int compressedStartIndex = byteBuf.writerIndex();
+        // 写入压缩结果时byteBuf可能扩容，所以每次都按下标分块读取，而不是持有底层内存的视图
+        try (OutputStream out = compressor.compress(new ByteBufOutputStream(byteBuf))) {
+            for (int index = bodyStartIndex; index < compressedStartIndex; ) {
+                int length = Math.min(copyBuffer.length, compressedStartIndex - index);
+                byteBuf.getBytes(index, copyBuffer, 0, length);
+                out.write(copyBuffer, 0, length);
+                index += length;
+            }
+        }
+        int compressedLength = byteBuf.writerIndex() - compressedStartIndex;
+        adaptiveCompression.record(key, bodyLength, compressedLength);
+
+        if (compressedLength >= bodyLength) {
+            byteBuf.writerIndex(compressedStartIndex);
+            return CompressTypeEnum.NONE.getCode();
+        }
+        // 压缩结果比原数据短，两段区域不重叠
+        byteBuf.setBytes(bodyStartIndex, byteBuf, compressedStartIndex, compressedLength);
+        byteBuf.writerIndex(bodyStartIndex + compressedLength);
+        return compress;
+    }
+
+    private static String compressionKey(Object data) {
+        if (data instanceof RpcRequest) {
+            return ((RpcRequest) data).getInterfaceName();
+        }
+        if (data instanceof RpcResponse) {
+            Object result = ((RpcResponse<?>) data).getData();
+            return result == null ? "" : result.getClass().getName();
+        }
+        return data == null ? "" : data.getClass().getName();
+    }
+
+    /**
+     * 统计写入压缩流之前的数据量，即未压缩的消息体大小
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private int count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * 按照上一帧的长度分配buffer，减少写入消息体时扩容带来的内存复制
+     * 编码器属于单个channel，只在其EventLoop中执行，不需要同步
+     */
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, RpcMessage msg, boolean preferDirect) {
+        int initialCapacity = Math.max(RpcConstants.HEAD_LENGTH, Math.min(estimatedFrameLength, MAX_INITIAL_BUFFER_SIZE));
+        if (preferDirect) {
+            return ctx.alloc().ioBuffer(initialCapacity);
         }
+        return ctx.alloc().heapBuffer(initialCapacity);
     }
 }
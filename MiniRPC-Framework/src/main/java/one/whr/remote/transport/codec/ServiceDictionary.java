@@ -0,0 +1,144 @@
+package one.whr.remote.transport.codec;
+
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import one.whr.remote.dto.RpcRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 连接内的服务字典，请求中的interfaceName、group、version只在第一次发送时写出，之后只发送一个整数ID
+ * 编码器和解码器各有一个实例：客户端的编码器分配ID，服务端的解码器记录ID对应的服务
+ * 同一连接上的帧按编码顺序到达，定义总是先于引用，因此不需要额外的协商消息
+ * 字典随连接一起创建和销毁，重连后重新定义
+ */
+final class ServiceDictionary {
+
+    // 每个连接最多定义的服务数，超过后的服务总是发送完整的字符串，避免对端的字典无限增长
+    static final int MAX_SIZE = 1024;
+
+    // 编码端，key: interfaceName，服务接口的名称在客户端是同一个String实例，比较很快
+    private final Map<String, List<Entry>> definedServices = new HashMap<>();
+
+    private int nextServiceId = 1;
+
+    // 解码端，key: service id
+    private final IntObjectMap<Entry> receivedServices = new IntObjectHashMap<>();
+
+    /**
+     * 编码端：得到写到连接上的请求，已定义的服务只带ID，未定义的服务带上完整字符串和新分配的ID
+     *
+     * @param rpcRequest 调用方的请求，不会被修改
+     * @return 用于序列化的请求
+     */
+    RpcRequest compact(RpcRequest rpcRequest) {
+        if (rpcRequest.getInterfaceName() == null) {
+            return rpcRequest;
+        }
+        List<Entry> entries = definedServices.get(rpcRequest.getInterfaceName());
+        if (entries != null) {
+            for (Entry entry : entries) {
+                if (entry.matches(rpcRequest)) {
+                    return wireRequest(rpcRequest, entry.serviceId, false);
+                }
+            }
+        }
+        if (nextServiceId > MAX_SIZE) {
+            return rpcRequest;
+        }
+        Entry entry = new Entry(nextServiceId++, rpcRequest.getInterfaceName(), rpcRequest.getGroup(), rpcRequest.getVersion());
+        definedServices.computeIfAbsent(entry.interfaceName, k -> new ArrayList<>(1)).add(entry);
+        return wireRequest(rpcRequest, entry.serviceId, true);
+    }
+
+    /**
+     * 编码端：带有定义的请求没有发送出去时撤销这个定义，后续请求重新定义
+     *
+     * @param wireRequest compact返回的请求
+     */
+    void discard(RpcRequest wireRequest) {
+        if (wireRequest.getServiceId() == 0 || wireRequest.getInterfaceName() == null) {
+            return;
+        }
+        List<Entry> entries = definedServices.get(wireRequest.getInterfaceName());
+        if (entries != null) {
+            entries.removeIf(entry -> entry.serviceId == wireRequest.getServiceId());
+        }
+    }
+
+    /**
+     * 解码端：记录请求中的定义，或者用ID还原服务的字符串
+     *
+     * @param wireRequest 反序列化得到的请求
+     * @return 完整的请求
+     */
+    RpcRequest expand(RpcRequest wireRequest) {
+        int serviceId = wireRequest.getServiceId();
+        if (serviceId == 0) {
+            return wireRequest;
+        }
+        if (wireRequest.getInterfaceName() != null) {
+            if (serviceId > MAX_SIZE) {
+                throw new IllegalArgumentException("service id out of range: " + serviceId);
+            }
+            receivedServices.put(serviceId, new Entry(serviceId, wireRequest.getInterfaceName(), wireRequest.getGroup(), wireRequest.getVersion()));
+            return wireRequest;
+        }
+        Entry entry = receivedServices.get(serviceId);
+        if (entry == null) {
+            throw new IllegalArgumentException("undefined service id: " + serviceId);
+        }
+        return RpcRequest.builder()
+                .interfaceName(entry.interfaceName)
+                .group(entry.group)
+                .version(entry.version)
+                .serviceId(serviceId)
+                .methodId(wireRequest.getMethodId())
+                .methodName(wireRequest.getMethodName())
+                .paramTypes(wireRequest.getParamTypes())
+                .parameters(wireRequest.getParameters())
+                .timeout(wireRequest.getTimeout())
+                .build();
+    }
+
+    private static RpcRequest wireRequest(RpcRequest rpcRequest, int serviceId, boolean define) {
+        return RpcRequest.builder()
+                .interfaceName(define ? rpcRequest.getInterfaceName() : null)
+                .group(define ? rpcRequest.getGroup() : null)
+                .version(define ? rpcRequest.getVersion() : null)
+                .serviceId(serviceId)
+                .methodId(rpcRequest.getMethodId())
+                .methodName(rpcRequest.getMethodName())
+                .paramTypes(rpcRequest.getParamTypes())
+                .parameters(rpcRequest.getParameters())
+                .timeout(rpcRequest.getTimeout())
+                .build();
+    }
+
+    private static final class Entry {
+        private final int serviceId;
+
+        private final String interfaceName;
+
+        private final String group;
+
+        private final String version;
+
+        private Entry(int serviceId, String interfaceName, String group, String version) {
+            this.serviceId = serviceId;
+            this.interfaceName = interfaceName;
+            this.group = group;
+            this.version = version;
+        }
+
+        private boolean matches(RpcRequest rpcRequest) {
+            return interfaceName.equals(rpcRequest.getInterfaceName())
+                    && Objects.equals(group, rpcRequest.getGroup())
+                    && Objects.equals(version, rpcRequest.getVersion());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package one.whr.remote.transport.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import one.whr.enums.RpcConfigEnum;
+import one.whr.utils.PropertiesUtils;
+
+/**
+ * Linux上基于epoll的native实现，比nio少一些系统调用，也不产生Selector的垃圾对象
+ * native库随netty-all提供(linux-x86_64和linux-aarch_64)
+ * rpc.transport.epoll.mode选择边缘触发(edge，默认)或水平触发(level)，
+ * rpc.transport.tcp-quickack开启TCP_QUICKACK，收到数据后立即回复ACK，不等待延迟确认
+ */
+public class EpollTransport implements NettyTransport {
+
+    private static final String LEVEL_TRIGGERED = "level";
+
+    private final EpollMode epollMode;
+
+    private final boolean tcpQuickAck;
+
+    public EpollTransport() {
+        this.epollMode = LEVEL_TRIGGERED.equals(PropertiesUtils.getRpcProperty(RpcConfigEnum.TRANSPORT_EPOLL_MODE, "edge"))
+                ? EpollMode.LEVEL_TRIGGERED : EpollMode.EDGE_TRIGGERED;
+        this.tcpQuickAck = PropertiesUtils.getRpcBooleanProperty(RpcConfigEnum.TRANSPORT_TCP_QUICKACK, false);
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return Epoll.isAvailable();
+    }
+
+    @Override
+    public EventLoopGroup newEventLoopGroup(int threads) {
+        return new EpollEventLoopGroup(threads);
+    }
+
+    @Override
+    public Class<? extends ServerChannel> serverChannelClass() {
+        return EpollServerSocketChannel.class;
+    }
+
+    @Override
+    public Class<? extends SocketChannel> socketChannelClass() {
+        return EpollSocketChannel.class;
+    }
+
+    @Override
+    public boolean supportsReusePort() {
+        return true;
+    }
+
+    @Override
+    public void configure(ServerBootstrap bootstrap, boolean reusePort) {
+        bootstrap.option(EpollChannelOption.EPOLL_MODE, epollMode)
+                .childOption(EpollChannelOption.EPOLL_MODE, epollMode)
+                .childOption(EpollChannelOption.TCP_QUICKACK, tcpQuickAck);
+        if (reusePort) {
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+    }
+
+    @Override
+    public void configure(Bootstrap bootstrap) {
+        bootstrap.option(EpollChannelOption.EPOLL_MODE, epollMode)
+                .option(EpollChannelOption.TCP_QUICKACK, tcpQuickAck);
+    }
+}
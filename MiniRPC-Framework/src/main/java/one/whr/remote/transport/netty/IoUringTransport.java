@@ -0,0 +1,93 @@
+package one.whr.remote.transport.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.socket.SocketChannel;
+import lombok.extern.slf4j.Slf4j;
+import one.whr.enums.RpcConfigEnum;
+import one.whr.exception.RpcException;
+import one.whr.utils.PropertiesUtils;
+
+/**
+ * Linux 5.9+上基于io_uring的native实现
+ * netty的io_uring还在incubator中，框架不依赖它，使用时需要自行加入
+ * io.netty.incubator:netty-incubator-transport-native-io_uring，因此这里通过反射加载
+ */
+@Slf4j
+public class IoUringTransport implements NettyTransport {
+
+    private static final String PACKAGE = "io.netty.incubator.channel.uring.";
+
+    private final boolean tcpQuickAck;
+
+    public IoUringTransport() {
+        this.tcpQuickAck = PropertiesUtils.getRpcBooleanProperty(RpcConfigEnum.TRANSPORT_TCP_QUICKACK, false);
+    }
+
+    @Override
+    public boolean isAvailable() {
+        try {
+            return (Boolean) loadClass("IOUring").getMethod("isAvailable").invoke(null);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.debug("io_uring transport is not on the classpath", e);
+            return false;
+        }
+    }
+
+    @Override
+    public EventLoopGroup newEventLoopGroup(int threads) {
+        try {
+            return (EventLoopGroup) loadClass("IOUringEventLoopGroup").getConstructor(int.class).newInstance(threads);
+        } catch (ReflectiveOperationException e) {
+            throw new RpcException("fail to create io_uring event loop group", e);
+        }
+    }
+
+    @Override
+    public Class<? extends ServerChannel> serverChannelClass() {
+        return loadClass("IOUringServerSocketChannel").asSubclass(ServerChannel.class);
+    }
+
+    @Override
+    public Class<? extends SocketChannel> socketChannelClass() {
+        return loadClass("IOUringSocketChannel").asSubclass(SocketChannel.class);
+    }
+
+    @Override
+    public boolean supportsReusePort() {
+        return true;
+    }
+
+    @Override
+    public void configure(ServerBootstrap bootstrap, boolean reusePort) {
+        bootstrap.childOption(option("TCP_QUICKACK"), tcpQuickAck);
+        if (reusePort) {
+            bootstrap.option(option("SO_REUSEPORT"), true);
+        }
+    }
+
+    @Override
+    public void configure(Bootstrap bootstrap) {
+        bootstrap.option(option("TCP_QUICKACK"), tcpQuickAck);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ChannelOption<Boolean> option(String name) {
+        try {
+            return (ChannelOption<Boolean>) loadClass("IOUringChannelOption").getField(name).get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new RpcException("io_uring channel option not found: " + name, e);
+        }
+    }
+
+    private static Class<?> loadClass(String simpleName) {
+        try {
+            return Class.forName(PACKAGE + simpleName);
+        } catch (ClassNotFoundException e) {
+            throw new NoClassDefFoundError(PACKAGE + simpleName);
+        }
+    }
+}
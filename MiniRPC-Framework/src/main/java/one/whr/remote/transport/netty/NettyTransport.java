@@ -0,0 +1,51 @@
+package one.whr.remote.transport.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.socket.SocketChannel;
+import one.whr.annotation.SPI;
+
+/**
+ * 客户端和服务端使用的netty IO实现：nio、epoll或io-uring
+ * 通过rpc.transport选择，默认auto，由NettyTransports.select()在Linux上优先使用epoll，不可用时使用nio
+ */
+@SPI
+public interface NettyTransport {
+
+    /**
+     * @return 当前平台上是否可以使用，native库加载失败时为false
+     */
+    boolean isAvailable();
+
+    /**
+     * @param threads 线程数，0表示netty的默认值(cpu核数的两倍)
+     * @return 新的EventLoopGroup
+     */
+    EventLoopGroup newEventLoopGroup(int threads);
+
+    Class<? extends ServerChannel> serverChannelClass();
+
+    Class<? extends SocketChannel> socketChannelClass();
+
+    /**
+     * @return 是否支持SO_REUSEPORT，支持时服务端可以用多个监听socket绑定同一端口
+     */
+    boolean supportsReusePort();
+
+    /**
+     * 设置这种实现特有的服务端选项
+     *
+     * @param bootstrap 服务端bootstrap
+     * @param reusePort 是否为监听socket开启SO_REUSEPORT
+     */
+    void configure(ServerBootstrap bootstrap, boolean reusePort);
+
+    /**
+     * 设置这种实现特有的客户端选项
+     *
+     * @param bootstrap 客户端bootstrap
+     */
+    void configure(Bootstrap bootstrap);
+}
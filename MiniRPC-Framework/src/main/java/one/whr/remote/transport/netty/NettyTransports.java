@@ -0,0 +1,38 @@
+package one.whr.remote.transport.netty;
+
+import lombok.extern.slf4j.Slf4j;
+import one.whr.enums.RpcConfigEnum;
+import one.whr.extension.ExtensionLoader;
+import one.whr.utils.PropertiesUtils;
+
+/**
+ * 按rpc.transport选择NettyTransport
+ * auto(默认)时依次尝试epoll和nio；io-uring需要自行加入依赖，只在明确配置时使用
+ * 配置的实现在当前平台上不可用时按auto选择
+ */
+@Slf4j
+public final class NettyTransports {
+
+    private static final String AUTO = "auto";
+
+    private static final String NIO = "nio";
+
+    private static final String EPOLL = "epoll";
+
+    private NettyTransports() {
+    }
+
+    public static NettyTransport select() {
+        ExtensionLoader<NettyTransport> loader = ExtensionLoader.getExtensionLoader(NettyTransport.class);
+        String name = PropertiesUtils.getRpcProperty(RpcConfigEnum.TRANSPORT, AUTO);
+        if (!AUTO.equals(name)) {
+            NettyTransport transport = loader.getExtension(name);
+            if (transport.isAvailable()) {
+                return transport;
+            }
+            log.warn("transport [{}] is not available on this platform, select automatically", name);
+        }
+        NettyTransport epoll = loader.getExtension(EPOLL);
+        return epoll.isAvailable() ? epoll : loader.getExtension(NIO);
+    }
+}
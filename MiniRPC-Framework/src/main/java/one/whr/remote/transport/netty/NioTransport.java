@@ -0,0 +1,51 @@
+package one.whr.remote.transport.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ * 基于JDK Selector的实现，所有平台都可以使用
+ */
+public class NioTransport implements NettyTransport {
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public EventLoopGroup newEventLoopGroup(int threads) {
+        return new NioEventLoopGroup(threads);
+    }
+
+    @Override
+    public Class<? extends ServerChannel> serverChannelClass() {
+        return NioServerSocketChannel.class;
+    }
+
+    @Override
+    public Class<? extends SocketChannel> socketChannelClass() {
+        return NioSocketChannel.class;
+    }
+
+    @Override
+    public boolean supportsReusePort() {
+        return false;
+    }
+
+    @Override
+    public void configure(ServerBootstrap bootstrap, boolean reusePort) {
+        // 只使用通用的ChannelOption
+    }
+
+    @Override
+    public void configure(Bootstrap bootstrap) {
+        // 只使用通用的ChannelOption
+    }
+}
@@ -0,0 +1,94 @@
+package one.whr.remote.transport.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.AdaptiveRecvByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.RecvByteBufAllocator;
+import io.netty.channel.WriteBufferWaterMark;
+import lombok.extern.slf4j.Slf4j;
+import one.whr.enums.RpcConfigEnum;
+import one.whr.utils.PropertiesUtils;
+
+/**
+ * rpc.properties中rpc.transport.*的通用channel选项，客户端的连接和服务端accept的连接使用相同的配置
+ * 与具体的NettyTransport无关，特定实现的选项由NettyTransport.configure设置
+ */
+@Slf4j
+public class TransportOptions {
+
+    private static final String UNPOOLED = "unpooled";
+
+    private final ByteBufAllocator allocator;
+
+    private final RecvByteBufAllocator recvByteBufAllocator;
+
+    private final WriteBufferWaterMark writeBufferWaterMark;
+
+    private final boolean tcpNoDelay;
+
+    // 0表示使用操作系统的默认值
+    private final int sendBufferSize;
+
+    private final int receiveBufferSize;
+
+    public TransportOptions() {
+        // 默认池化的direct buffer，编码和socket写出之间不需要复制
+        boolean preferDirect = PropertiesUtils.getRpcBooleanProperty(RpcConfigEnum.TRANSPORT_PREFER_DIRECT, true);
+        if (UNPOOLED.equals(PropertiesUtils.getRpcProperty(RpcConfigEnum.TRANSPORT_ALLOCATOR, "pooled"))) {
+            allocator = new UnpooledByteBufAllocator(preferDirect);
+        } else {
+            allocator = preferDirect ? PooledByteBufAllocator.DEFAULT : new PooledByteBufAllocator(false);
+        }
+        // 每次读取的buffer大小在min和max之间按上次读到的数据量调整
+        recvByteBufAllocator = new AdaptiveRecvByteBufAllocator(
+                PropertiesUtils.getRpcIntProperty(RpcConfigEnum.TRANSPORT_RECEIVE_BUFFER_MIN, 64),
+                PropertiesUtils.getRpcIntProperty(RpcConfigEnum.TRANSPORT_RECEIVE_BUFFER_INITIAL, 2048),
+                PropertiesUtils.getRpcIntProperty(RpcConfigEnum.TRANSPORT_RECEIVE_BUFFER_MAX, 65536));
+        // 待写出的数据超过high时channel变为不可写，降到low以下后恢复
+        writeBufferWaterMark = new WriteBufferWaterMark(
+                PropertiesUtils.getRpcIntProperty(RpcConfigEnum.TRANSPORT_WRITE_BUFFER_LOW, 32 * 1024),
+                PropertiesUtils.getRpcIntProperty(RpcConfigEnum.TRANSPORT_WRITE_BUFFER_HIGH, 64 * 1024));
+        tcpNoDelay = PropertiesUtils.getRpcBooleanProperty(RpcConfigEnum.TRANSPORT_TCP_NODELAY, true);
+        sendBufferSize = PropertiesUtils.getRpcIntProperty(RpcConfigEnum.TRANSPORT_SO_SNDBUF, 0);
+        receiveBufferSize = PropertiesUtils.getRpcIntProperty(RpcConfigEnum.TRANSPORT_SO_RCVBUF, 0);
+        log.info("transport options: allocator [{}], receive buffer [{}], write buffer [{}], TCP_NODELAY [{}], SO_SNDBUF [{}], SO_RCVBUF [{}]",
+                allocator.getClass().getSimpleName(), recvByteBufAllocator.getClass().getSimpleName(), writeBufferWaterMark,
+                tcpNoDelay, sendBufferSize, receiveBufferSize);
+    }
+
+    /**
+     * 监听socket只需要allocator，其余选项设置在accept的连接上
+     * SO_RCVBUF在listen之前设置才能对窗口缩放生效，因此同时设置在监听socket上
+     */
+    public void configure(ServerBootstrap bootstrap) {
+        bootstrap.option(ChannelOption.ALLOCATOR, allocator)
+                .childOption(ChannelOption.ALLOCATOR, allocator)
+                .childOption(ChannelOption.RCVBUF_ALLOCATOR, recvByteBufAllocator)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, writeBufferWaterMark)
+                .childOption(ChannelOption.TCP_NODELAY, tcpNoDelay);
+        if (sendBufferSize > 0) {
+            bootstrap.childOption(ChannelOption.SO_SNDBUF, sendBufferSize);
+        }
+        if (receiveBufferSize > 0) {
+            bootstrap.option(ChannelOption.SO_RCVBUF, receiveBufferSize)
+                    .childOption(ChannelOption.SO_RCVBUF, receiveBufferSize);
+        }
+    }
+
+    public void configure(Bootstrap bootstrap) {
+        bootstrap.option(ChannelOption.ALLOCATOR, allocator)
+                .option(ChannelOption.RCVBUF_ALLOCATOR, recvByteBufAllocator)
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK, writeBufferWaterMark)
+                .option(ChannelOption.TCP_NODELAY, tcpNoDelay);
+        if (sendBufferSize > 0) {
+            bootstrap.option(ChannelOption.SO_SNDBUF, sendBufferSize);
+        }
+        if (receiveBufferSize > 0) {
+            bootstrap.option(ChannelOption.SO_RCVBUF, receiveBufferSize);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package one.whr.remote.transport.server;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import lombok.extern.slf4j.Slf4j;
+import one.whr.remote.dto.RpcMessage;
+import one.whr.utils.RpcConstants;
+
+/**
+ * 记录所有客户端连接，服务端关闭时排空这些连接
+ * 每个连接发送一次GOAWAY，客户端不再在这个连接上发送新的请求，已经发出的请求收到响应后由客户端关闭连接，
+ * 所有连接都关闭或超过等待时间后，剩下的连接在写出已经提交的响应之后关闭
+ */
+@Slf4j
+public class ConnectionDrainer {
+
+    // 超过等待时间后强制关闭连接时，等待写出已经提交的响应的时间
+    private static final long FORCE_CLOSE_GRACE_MILLIS = 1000;
+
+    // 关闭的连接自动移出
+    private final ChannelGroup channels = new DefaultChannelGroup("rpc-server-connections", GlobalEventExecutor.INSTANCE);
+
+    private volatile boolean draining;
+
+    /**
+     * 记录新的连接，已经开始排空时立即发送GOAWAY
+     *
+     * @param channel 客户端连接
+     */
+    public void add(Channel channel) {
+        channels.add(channel);
+        if (draining) {
+            sendGoAway(channel);
+        }
+    }
+
+    /**
+     * 通知所有连接GOAWAY，等待客户端关闭连接
+     *
+     * @param timeoutMillis 最多等待客户端关闭连接的时间，之后强制关闭还要最多FORCE_CLOSE_GRACE_MILLIS
+     * @return 是否所有连接都由客户端关闭
+     */
+    public boolean drain(long timeoutMillis) {
+        draining = true;
+        log.info("send GOAWAY to [{}] connections", channels.size());
+        for (Channel channel : channels) {
+            sendGoAway(channel);
+        }
+        boolean drained;
+        try {
+            drained = channels.newCloseFuture().await(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            drained = false;
+        }
+        if (!drained) {
+            log.warn("[{}] connections still open after [{}]ms, close them", channels.size(), timeoutMillis);
+            for (Channel channel : channels) {
+                // 空的写在之前提交的响应都写出之后才完成，关闭不会丢弃已经提交的响应
+                channel.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+            }
+            // 已经用完了timeoutMillis，只再等待写出已经提交的响应
+            if (!channels.newCloseFuture().awaitUninterruptibly(FORCE_CLOSE_GRACE_MILLIS)) {
+                log.warn("[{}] connections not closed after [{}]ms more", channels.size(), FORCE_CLOSE_GRACE_MILLIS);
+            }
+        }
+        return drained;
+    }
+
+    private static void sendGoAway(Channel channel) {
+        RpcMessage goAway = new RpcMessage();
+        goAway.setMessageType(RpcConstants.GOAWAY_TYPE);
+        channel.writeAndFlush(goAway).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+    }
+}
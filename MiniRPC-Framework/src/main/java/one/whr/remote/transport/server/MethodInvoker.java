@@ -0,0 +1,53 @@
+package one.whr.remote.transport.server;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * 绑定了服务实例的方法调用
+ * MethodHandle在服务注册时创建，调用时不再查找方法，也没有Method.invoke的访问检查
+ */
+public final class MethodInvoker {
+
+    // (Object[])Object，参数数组展开后调用服务方法，返回值装箱
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    private final Method method;
+
+    private final MethodHandle methodHandle;
+
+    MethodInvoker(Object service, Method method) throws IllegalAccessException {
+        this.method = method;
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.publicLookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            // 接口不是public的
+            method.setAccessible(true);
+            handle = MethodHandles.lookup().unreflect(method);
+        }
+        this.methodHandle = handle.bindTo(service)
+                .asSpreader(Object[].class, method.getParameterCount())
+                .asType(INVOKER_TYPE);
+    }
+
+    /**
+     * @param parameters 调用参数，没有参数时可以为null
+     * @return 调用结果，void方法返回null
+     * @throws Throwable 服务方法抛出的异常
+     */
+    public Object invoke(Object[] parameters) throws Throwable {
+        return (Object) methodHandle.invokeExact(parameters);
+    }
+
+    public String getMethodName() {
+        return method.getName();
+    }
+
+    boolean matches(String methodName, Class<?>[] paramTypes) {
+        return method.getName().equals(methodName) && Arrays.equals(method.getParameterTypes(), paramTypes);
+    }
+}
@@ -7,9 +7,6 @@ import one.whr.registry.ServiceProvider;
 import one.whr.registry.zookeeper.ZkServiceProviderImpl;
 import one.whr.remote.dto.RpcRequest;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-
 /**
  * 用于调用请求的服务
  */
@@ -28,24 +25,23 @@ public class RpcRequestHandler {
      * @return 调用结果
      */
     public Object handle(RpcRequest rpcRequest) {
-        Object service = serviceProvider.getService(rpcRequest.getRpcServiceName());
-        return invokeTargetMethod(rpcRequest, service);
+        MethodInvoker invoker = serviceProvider.getMethodTable(rpcRequest.getRpcServiceName()).lookup(rpcRequest);
+        return invokeTargetMethod(rpcRequest, invoker);
     }
 
     /**
-     * 使用反射调用服务并返回结果
+     * 通过服务注册时创建的MethodHandle调用服务并返回结果
      *
      * @param rpcRequest RPC请求
-     * @param service    服务实例
+     * @param invoker    绑定了服务实例的方法
      * @return 调用结果
      */
-    private Object invokeTargetMethod(RpcRequest rpcRequest, Object service) {
+    private Object invokeTargetMethod(RpcRequest rpcRequest, MethodInvoker invoker) {
         Object result;
         try {
-            Method method = service.getClass().getMethod(rpcRequest.getMethodName(), rpcRequest.getParamTypes());
-            result = method.invoke(service, rpcRequest.getParameters());
-            log.info("service: [{}] successfully invokes -----> method:[{}]", rpcRequest.getInterfaceName(), rpcRequest.getMethodName());
-        } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException e) {
+            result = invoker.invoke(rpcRequest.getParameters());
+            log.debug("service: [{}] successfully invokes -----> method:[{}]", rpcRequest.getInterfaceName(), invoker.getMethodName());
+        } catch (Throwable e) {
             throw new RpcException(e.getMessage(), e);
         }
         return result;
@@ -1,32 +1,30 @@
 package one.whr.remote.transport.server;
 
 import io.netty.bootstrap.ServerBootstrap;
-import io.netty.channel.ChannelFuture;
-import io.netty.channel.ChannelInitializer;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
-import io.netty.handler.timeout.IdleStateHandler;
-import io.netty.util.concurrent.DefaultEventExecutorGroup;
 import lombok.extern.slf4j.Slf4j;
 import one.whr.config.CustomShutdownHook;
 import one.whr.config.RpcServiceConfig;
+import one.whr.enums.RpcConfigEnum;
+import one.whr.extension.ExtensionLoader;
 import one.whr.factory.SingletonFactory;
 import one.whr.registry.ServiceProvider;
 import one.whr.registry.zookeeper.ZkServiceProviderImpl;
-import one.whr.remote.transport.codec.RpcMessageDecoder;
-import one.whr.remote.transport.codec.RpcMessageEncoder;
-import one.whr.utils.concurrent.threadpool.ThreadPoolFactoryUtil;
+import one.whr.remote.transport.netty.NettyTransport;
+import one.whr.remote.transport.netty.NettyTransports;
+import one.whr.remote.transport.netty.TransportOptions;
+import one.whr.remote.transport.server.dispatcher.RequestDispatcher;
+import one.whr.utils.PropertiesUtils;
 import org.springframework.stereotype.Component;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * RPC 服务端
@@ -36,66 +34,107 @@ import java.util.concurrent.TimeUnit;
 public class RpcServer {
     public static final int PORT = 9998; // Listening port
 
+    private static final int DEFAULT_SHUTDOWN_TIMEOUT_MILLIS = 10_000;
+
     private final ServiceProvider serviceProvider = SingletonFactory.getInstance(ZkServiceProviderImpl.class);
 
+    private final ConnectionDrainer connectionDrainer = SingletonFactory.getInstance(ConnectionDrainer.class);
+
+    // 监听socket，关闭时首先关闭，不再接受新的连接
+    private final List<Channel> serverChannels = new CopyOnWriteArrayList<>();
+
+    // 在关闭钩子的线程中读取
+    private volatile EventLoopGroup bossGroup;
+
+    private volatile EventLoopGroup workerGroup;
+
+    private volatile RequestDispatcher dispatcher;
+
+    private boolean shutdown;
+
     /**
      * 创建EventLoop，配置监听端口，配置pipeline，启动服务端
      *
      * @throws UnknownHostException 异常
      */
     public void start() throws UnknownHostException {
-        CustomShutdownHook.getCustomeShutdownHook().clearAll(); // clear all before start
+        CustomShutdownHook.getCustomeShutdownHook().clearAll(this); // clear all before start
         String host = InetAddress.getLocalHost().getHostAddress();
 
-        // 2 NioEventLoop group
-        EventLoopGroup bossGroup = new NioEventLoopGroup(1); // 1 thread， MultithreadEventLoopGroup implementations which is used for NIO Selector based Channels.
-        EventLoopGroup workerGroup = new NioEventLoopGroup();  // 默认的线程数是cpu核数的两倍
-        DefaultEventExecutorGroup serviceHandlerGroup = new DefaultEventExecutorGroup(
-                Runtime.getRuntime().availableProcessors() * 2,
-                // custom service handlers' thread-pool config
-                ThreadPoolFactoryUtil.createThreadFactory("service-handler-group", false)
-        );
+        // Linux上默认使用epoll，其他平台使用nio
+        NettyTransport transport = NettyTransports.select();
+        // 支持SO_REUSEPORT时可以用多个监听socket绑定同一端口，每个socket一个accept线程，由内核在它们之间分配新连接
+        int acceptors = Math.max(1, PropertiesUtils.getRpcIntProperty(RpcConfigEnum.SERVER_ACCEPTORS, 1));
+        if (acceptors > 1 && !transport.supportsReusePort()) {
+            log.warn("transport [{}] does not support SO_REUSEPORT, use one acceptor", transport.getClass().getSimpleName());
+            acceptors = 1;
+        }
+        // 2 EventLoop group
+        bossGroup = transport.newEventLoopGroup(acceptors); // one thread per listening socket
+        // 默认的线程数是cpu核数的两倍
+        workerGroup = transport.newEventLoopGroup(PropertiesUtils.getRpcIntProperty(RpcConfigEnum.SERVER_IO_THREADS, 0));
+        // 执行服务调用的线程模型：event-executor、thread-pool或virtual-thread
+        dispatcher = ExtensionLoader.getExtensionLoader(RequestDispatcher.class)
+                .getExtension(PropertiesUtils.getRpcProperty(RpcConfigEnum.SERVER_DISPATCHER, "event-executor"));
 
         try {
             ServerBootstrap bootstrap = new ServerBootstrap(); // bootstrap is used to config EventLoop and start it
             bootstrap.group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class) // we need ServerSocketChannel on server side
+                    .channel(transport.serverChannelClass()) // we need ServerSocketChannel on server side
                     // backlog length
                     // Socket参数，服务端接受连接的队列长度，如果队列已满，客户端连接将被拒绝。默认值，Windows为200，其他为128。
-                    .option(ChannelOption.SO_BACKLOG, 128)  // bossGroup option
+                    .option(ChannelOption.SO_BACKLOG, PropertiesUtils.getRpcIntProperty(RpcConfigEnum.SERVER_BACKLOG, 128))  // bossGroup option
                     .handler(new LoggingHandler(LogLevel.INFO))
-                    // disable Nagle algorithm and send package immediately
-                    // Nagle's algorithm works by combining a number of small outgoing messages and sending them all at once
                     // workerGroup option
-                    .childOption(ChannelOption.TCP_NODELAY, true)
                     .childOption(ChannelOption.SO_KEEPALIVE, true)  // 启用该功能时，TCP会主动探测空闲连接的有效性
-                    .childHandler(new ChannelInitializer<SocketChannel>() {
-                        @Override
-                        protected void initChannel(SocketChannel ch) {
-                            // ChannelPipeline是Netty处理请求的责任链，ChannelHandler则是具体处理请求的处理
-                            // 实际上每一个channel都有一个处理器的流水线。
-                            ChannelPipeline p = ch.pipeline(); // pipeline is the logic chain for packages
-                            p.addLast(new IdleStateHandler(30, 0, 0, TimeUnit.SECONDS));  // in n out
-                            p.addLast(new RpcMessageEncoder());  // outbound
-                            p.addLast(new RpcMessageDecoder());  // inbound
-                            p.addLast(serviceHandlerGroup, new RpcServerHandler());  // inbound
-                        }
-                    });
+                    .childHandler(new RpcServerInitializer(dispatcher));
+            // allocator、buffer、TCP_NODELAY等与客户端共用的选项，来自rpc.transport.*
+            // disable Nagle algorithm and send package immediately
+            // Nagle's algorithm works by combining a number of small outgoing messages and sending them all at once
+            new TransportOptions().configure(bootstrap);
+            transport.configure(bootstrap, acceptors > 1);
 
             // bind port and synchronize wait for binding success
-            ChannelFuture future = bootstrap.bind(host, PORT).sync();
+            // 每次bind注册到bossGroup中的下一个EventLoop，多个acceptor各自在一个线程中accept
+            for (int i = 0; i < acceptors; i++) {
+                serverChannels.add(bootstrap.bind(host, PORT).sync().channel());
+            }
+            log.info("RPC server listening on [{}:{}] with [{}], acceptors: [{}]",
+                    host, PORT, transport.getClass().getSimpleName(), acceptors);
             // synchronize wait listening port close
-            future.channel().closeFuture().sync();
+            for (Channel serverChannel : serverChannels) {
+                serverChannel.closeFuture().sync();
+            }
         } catch (InterruptedException e) {
             log.error("Fail to start RPC server: ", e);
         } finally {
-            // 关闭线程池
-            log.warn("Shutting down boss group and worker group");
-            bossGroup.shutdownGracefully();
-            workerGroup.shutdownGracefully();
-            serviceHandlerGroup.shutdownGracefully();
-            log.warn("Shutdown server successfully");
+            shutdown();
+        }
+    }
+
+    /**
+     * 优雅关闭：停止接受新的连接，向所有连接发送GOAWAY，等待客户端处理完已经发出的请求并关闭连接，
+     * 最多等待rpc.server.shutdown.timeout毫秒，最后关闭线程池
+     * 从zk注销在这之前由关闭钩子完成，重复调用直接返回
+     */
+    public synchronized void shutdown() {
+        if (shutdown || dispatcher == null) {
+            return;
+        }
+        shutdown = true;
+        for (Channel serverChannel : serverChannels) {
+            serverChannel.close().syncUninterruptibly();
+        }
+        long timeoutMillis = PropertiesUtils.getRpcIntProperty(RpcConfigEnum.SERVER_SHUTDOWN_TIMEOUT, DEFAULT_SHUTDOWN_TIMEOUT_MILLIS);
+        if (connectionDrainer.drain(timeoutMillis)) {
+            log.info("All connections drained");
         }
+        // 关闭线程池
+        log.warn("Shutting down boss group and worker group");
+        bossGroup.shutdownGracefully().syncUninterruptibly();
+        workerGroup.shutdownGracefully().syncUninterruptibly();
+        dispatcher.shutdown();
+        log.warn("Shutdown server successfully");
     }
 
     public void registerService(RpcServiceConfig rpcServiceConfig) {
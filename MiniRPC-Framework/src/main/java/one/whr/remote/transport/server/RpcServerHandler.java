@@ -3,64 +3,87 @@ package one.whr.remote.transport.server;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.ReferenceCountUtil;
 import lombok.extern.slf4j.Slf4j;
+import one.whr.config.RpcServiceConfig;
 import one.whr.enums.CompressTypeEnum;
 import one.whr.enums.RpcResponseCodeEnum;
 import one.whr.enums.SerializationEnum;
 import one.whr.factory.SingletonFactory;
+import one.whr.registry.ServiceProvider;
+import one.whr.registry.zookeeper.ZkServiceProviderImpl;
 import one.whr.remote.dto.RpcMessage;
 import one.whr.remote.dto.RpcRequest;
 import one.whr.remote.dto.RpcResponse;
+import one.whr.remote.transport.server.dispatcher.RequestDispatcher;
 import one.whr.utils.RpcConstants;
+import one.whr.utils.StringUtil;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * 继承了ChannelInboundHandlerAdapter，处理inbound消息
  * 处理客户端的请求报文
- * 并发送给RpcRequestHandler进行服务的调用
+ * 并通过RequestDispatcher发送给RpcRequestHandler进行服务的调用
  */
 @Slf4j
 public class RpcServerHandler extends ChannelInboundHandlerAdapter {
     private final RpcRequestHandler rpcRequestHandler;
+    private final ServiceProvider serviceProvider;
+    private final ServiceConcurrencyLimiter concurrencyLimiter;
+    private final ConnectionDrainer connectionDrainer;
+    // 执行服务调用的线程模型，避免服务调用阻塞IO线程
+    private final RequestDispatcher dispatcher;
 
-    public RpcServerHandler() {
+    public RpcServerHandler(RequestDispatcher dispatcher) {
         this.rpcRequestHandler = SingletonFactory.getInstance(RpcRequestHandler.class);
+        this.serviceProvider = SingletonFactory.getInstance(ZkServiceProviderImpl.class);
+        this.concurrencyLimiter = SingletonFactory.getInstance(ServiceConcurrencyLimiter.class);
+        this.connectionDrainer = SingletonFactory.getInstance(ConnectionDrainer.class);
+        this.dispatcher = dispatcher;
     }
 
+    /**
+     * 记录连接，服务端关闭时通过GOAWAY排空
+     */
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        connectionDrainer.add(ctx.channel());
+        super.channelActive(ctx);
+    }
+
+    /**
+     * 在channel的IO线程中执行，心跳直接响应，请求交给dispatcher处理
+     */
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) {
         try {
             if (msg instanceof RpcMessage) {
-                log.info("Server received message: [{}]", msg);
+                log.debug("Server received message: [{}]", msg);
 
                 // msg for responding the clients
+                // 默认使用请求的序列化和压缩方式，保证客户端一定能解码
                 RpcMessage responseMessage = new RpcMessage();
-                responseMessage.setCodec(SerializationEnum.KRYO.getCode());
-                responseMessage.setCompress(CompressTypeEnum.GZIP.getCode());
+                responseMessage.setCodec(((RpcMessage) msg).getCodec());
+                responseMessage.setCompress(((RpcMessage) msg).getCompress());
+                // 客户端按消息头中的请求ID找到对应的请求
+                responseMessage.setRequestId(((RpcMessage) msg).getRequestId());
 
                 byte messageType = ((RpcMessage) msg).getMessageType();
                 if (messageType == RpcConstants.HEARTBEAT_PING_TYPE) {
                     // heartbeat type
                     responseMessage.setMessageType(RpcConstants.HEARTBEAT_PONG_TYPE);
                     responseMessage.setData(RpcConstants.PONG);
+                    ctx.writeAndFlush(responseMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
                 } else {
                     // request type
-                    RpcRequest rpcRequest = (RpcRequest) ((RpcMessage) msg).getData(); // get request from RPC message
-                    Object result = rpcRequestHandler.handle(rpcRequest); // give request to RpcRequestHandler to process
-                    log.info(String.format("Server RPC get result: %s", result.toString()));
                     responseMessage.setMessageType(RpcConstants.RESPONSE_TYPE);
-                    if (ctx.channel().isActive() && ctx.channel().isWritable()) {
-                        RpcResponse<Object> rpcResponse = RpcResponse.generateSuccessResponse(result, rpcRequest.getRequestId());
-                        responseMessage.setData(rpcResponse);
-                    } else {
-                        RpcResponse<Object> rpcResponse = RpcResponse.generateFailResponse(RpcResponseCodeEnum.FAIL);
-                        responseMessage.setData(rpcResponse);
-                        log.error("context not writable now, message dropped");
-                    }
+                    dispatchRequest(ctx, (RpcMessage) msg, responseMessage);
                 }
-                ctx.writeAndFlush(responseMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
             }
         } finally {
             //Ensure that ByteBuf is released, otherwise there may be memory leaks
@@ -68,8 +91,136 @@ public class RpcServerHandler extends ChannelInboundHandlerAdapter {
         }
     }
 
+    /**
+     * 获取并发许可后交给dispatcher，超过并发上限或dispatcher拒绝时立即返回OVERLOADED，客户端可以换一个节点重试
+     */
+    private void dispatchRequest(ChannelHandlerContext ctx, RpcMessage requestMessage, RpcMessage responseMessage) {
+        RpcRequest rpcRequest = (RpcRequest) requestMessage.getData(); // get request from RPC message
+        String rpcServiceName = rpcRequest.getRpcServiceName();
+        if (!concurrencyLimiter.tryAcquire(rpcServiceName)) {
+            log.warn("too many concurrent requests, rejected: [{}#{}]", rpcRequest.getInterfaceName(), rpcRequest.getMethodDescription());
+            writeFailResponse(ctx, responseMessage, RpcResponseCodeEnum.OVERLOADED);
+            return;
+        }
+        // 延迟从获取许可开始计算，包括在dispatcher中排队的时间
+        long startNanos = System.nanoTime();
+        try {
+            dispatcher.dispatch(() -> handleRequest(ctx, requestMessage, responseMessage, startNanos));
+        } catch (RejectedExecutionException e) {
+            concurrencyLimiter.drop(rpcServiceName);
+            log.warn("request dispatcher is saturated, rejected: [{}#{}]", rpcRequest.getInterfaceName(), rpcRequest.getMethodDescription());
+            writeFailResponse(ctx, responseMessage, RpcResponseCodeEnum.OVERLOADED);
+        }
+    }
+
+    /**
+     * 在dispatcher的线程中调用服务，许可在结果写出时释放
+     */
+    private void handleRequest(ChannelHandlerContext ctx, RpcMessage requestMessage, RpcMessage responseMessage, long startNanos) {
+        RpcRequest rpcRequest = (RpcRequest) requestMessage.getData();
+        String rpcServiceName = rpcRequest.getRpcServiceName();
+        if (isExpired(requestMessage)) {
+            // 客户端已经超时放弃了这个请求，不再调用服务，也不再响应
+            concurrencyLimiter.release(rpcServiceName, System.nanoTime() - startNanos);
+            log.warn("request expired before handling, dropped: [{}#{}]", rpcRequest.getInterfaceName(), rpcRequest.getMethodDescription());
+            return;
+        }
+        Object result;
+        try {
+            applyServiceCodec(responseMessage, serviceProvider.getServiceConfig(rpcServiceName));
+            result = rpcRequestHandler.handle(rpcRequest); // give request to RpcRequestHandler to process
+        } catch (RuntimeException e) {
+            concurrencyLimiter.release(rpcServiceName, System.nanoTime() - startNanos);
+            writeResponse(ctx, responseMessage, null, e);
+            return;
+        }
+        if (result instanceof CompletionStage) {
+            // 返回future的服务方法不占用处理线程，future完成时在完成它的线程中写出响应
+            ((CompletionStage<?>) result).whenComplete((value, e) -> {
+                concurrencyLimiter.release(rpcServiceName, System.nanoTime() - startNanos);
+                writeResponse(ctx, responseMessage, value, e);
+            });
+        } else {
+            concurrencyLimiter.release(rpcServiceName, System.nanoTime() - startNanos);
+            writeResponse(ctx, responseMessage, result, null);
+        }
+    }
+
+    /**
+     * 写出调用结果，可能在处理线程之外的线程中调用，writeAndFlush会切换到channel的EventLoop
+     * 连接不可写时响应仍然写入发送缓冲，由channelWritabilityChanged暂停读取新的请求来限制缓冲的增长
+     *
+     * @param ctx             上下文
+     * @param responseMessage 响应消息
+     * @param result          服务执行结果
+     * @param error           服务执行抛出的异常，没有异常时为null
+     */
+    private void writeResponse(ChannelHandlerContext ctx, RpcMessage responseMessage, Object result, Throwable error) {
+        if (error != null) {
+            log.error("service invocation failed", error);
+            writeFailResponse(ctx, responseMessage, RpcResponseCodeEnum.FAIL);
+        } else if (ctx.channel().isActive()) {
+            log.debug("Server RPC get result: [{}]", result);
+            responseMessage.setData(RpcResponse.generateSuccessResponse(result));
+            ctx.writeAndFlush(responseMessage).addListener((ChannelFutureListener) future -> {
+                if (future.isSuccess()) {
+                    return;
+                }
+                if (future.cause() instanceof EncoderException) {
+                    // 结果无法序列化，连接仍然可用，返回失败响应
+                    log.error("fail to encode result of request [{}]", responseMessage.getRequestId(), future.cause());
+                    writeFailResponse(ctx, responseMessage, RpcResponseCodeEnum.FAIL);
+                } else {
+                    future.channel().close();
+                }
+            });
+        } else {
+            log.warn("connection closed before response written, dropped: [{}]", ctx.channel());
+        }
+    }
+
+    /**
+     * 待写出的响应超过高水位时停止读取这个连接的请求，客户端的发送窗口和TCP窗口随之填满，
+     * 降到低水位以下后恢复读取，慢的客户端不会让服务端的发送缓冲无限增长
+     */
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        boolean writable = ctx.channel().isWritable();
+        if (!writable) {
+            log.warn("[{}] is not writable, stop reading requests until responses drain", ctx.channel());
+        }
+        ctx.channel().config().setAutoRead(writable);
+        super.channelWritabilityChanged(ctx);
+    }
+
+    private void writeFailResponse(ChannelHandlerContext ctx, RpcMessage responseMessage, RpcResponseCodeEnum code) {
+        responseMessage.setData(RpcResponse.generateFailResponse(code));
+        ctx.writeAndFlush(responseMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+    }
+
+    private static boolean isExpired(RpcMessage rpcMessage) {
+        long deadline = rpcMessage.getDeadline();
+        return deadline != 0 && System.nanoTime() - deadline > 0;
+    }
+
+    /**
+     * 服务在@RpcService中指定了序列化或压缩方式时，响应使用服务的配置
+     *
+     * @param responseMessage  响应消息
+     * @param rpcServiceConfig 服务配置
+     */
+    private void applyServiceCodec(RpcMessage responseMessage, RpcServiceConfig rpcServiceConfig) {
+        if (!StringUtil.isBlank(rpcServiceConfig.getSerialization())) {
+            responseMessage.setCodec(SerializationEnum.getCode(rpcServiceConfig.getSerialization()));
+        }
+        if (!StringUtil.isBlank(rpcServiceConfig.getCompress())) {
+            responseMessage.setCompress(CompressTypeEnum.getCode(rpcServiceConfig.getCompress()));
+        }
+    }
+
     /**
      * 当channel空闲一段时间没有消息，关闭该连接
+     * 因为连接不可写而暂停读取时读不到消息不算空闲，IdleStateHandler会在下一个周期再次检查
      *
      * @param ctx 上下文
      * @param evt idle事件
@@ -80,6 +231,10 @@ public class RpcServerHandler extends ChannelInboundHandlerAdapter {
         if (evt instanceof IdleStateEvent) {
             IdleState state = ((IdleStateEvent) evt).state();
             if (state == IdleState.READER_IDLE) {
+                if (!ctx.channel().config().isAutoRead()) {
+                    log.debug("[{}] reading is paused, skip idle close", ctx.channel());
+                    return;
+                }
                 log.info("idle check happen, so close the connection");
                 ctx.close();
             }
@@ -0,0 +1,50 @@
+package one.whr.remote.transport.server;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+import one.whr.enums.RpcConfigEnum;
+import one.whr.remote.transport.codec.RpcMessageDecoder;
+import one.whr.remote.transport.codec.RpcMessageEncoder;
+import one.whr.remote.transport.server.dispatcher.RequestDispatcher;
+import one.whr.utils.PropertiesUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务端channel的pipeline配置，不依赖具体的channel类型，
+ * 因此除了socket连接之外也可以用于netty的local transport
+ */
+public class RpcServerInitializer extends ChannelInitializer<Channel> {
+    // 执行服务调用的线程模型，所有连接共用
+    private final RequestDispatcher dispatcher;
+
+    // 一次flush最多合并的响应数，0表示每个响应单独flush
+    private final int flushConsolidation;
+
+    public RpcServerInitializer(RequestDispatcher dispatcher) {
+        this(dispatcher, PropertiesUtils.getRpcIntProperty(RpcConfigEnum.TRANSPORT_FLUSH_CONSOLIDATION, 0));
+    }
+
+    public RpcServerInitializer(RequestDispatcher dispatcher, int flushConsolidation) {
+        this.dispatcher = dispatcher;
+        this.flushConsolidation = flushConsolidation;
+    }
+
+    @Override
+    protected void initChannel(Channel ch) {
+        // ChannelPipeline是Netty处理请求的责任链，ChannelHandler则是具体处理请求的处理
+        // 实际上每一个channel都有一个处理器的流水线。
+        ChannelPipeline p = ch.pipeline(); // pipeline is the logic chain for packages
+        if (flushConsolidation > 0) {
+            // 放在最前面，读循环中写出的响应在读完成时一起flush，处理线程写出的响应在EventLoop的下一个任务中一起flush
+            p.addLast(new FlushConsolidationHandler(flushConsolidation, true));
+        }
+        p.addLast(new IdleStateHandler(30, 0, 0, TimeUnit.SECONDS));  // in n out
+        p.addLast(new RpcMessageEncoder());  // outbound
+        p.addLast(new RpcMessageDecoder());  // inbound
+        p.addLast(new RpcServerHandler(dispatcher));  // inbound
+    }
+}
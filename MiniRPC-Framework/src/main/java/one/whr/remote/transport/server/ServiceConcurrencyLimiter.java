@@ -0,0 +1,119 @@
+package one.whr.remote.transport.server;
+
+import one.whr.config.RpcServiceConfig;
+import one.whr.enums.RpcConfigEnum;
+import one.whr.exception.RpcException;
+import one.whr.factory.SingletonFactory;
+import one.whr.registry.ServiceProvider;
+import one.whr.registry.zookeeper.ZkServiceProviderImpl;
+import one.whr.remote.transport.server.limit.ConcurrencyLimit;
+import one.whr.remote.transport.server.limit.FixedConcurrencyLimit;
+import one.whr.remote.transport.server.limit.VegasConcurrencyLimit;
+import one.whr.utils.PropertiesUtils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 限制同时在处理的请求数，超过上限的请求立即以OVERLOADED拒绝，客户端换一个节点重试，而不是排队直到超时
+ * 每个服务一个上限，避免一个慢服务占满dispatcher的线程或队列，饿死其他服务；所有服务还共用一个全局上限
+ * rpc.server.limiter为fixed(默认)时：
+ * 服务的上限取@RpcService(maxConcurrency)，没有配置时取rpc.server.service.max-concurrency，全局上限取rpc.server.max-concurrency，0表示不限制
+ * 为vegas时：上限按测得的延迟自动调整，上面的配置作为上限的最大值，没有配置时最大为rpc.server.limiter.max-limit
+ * 许可在请求交给dispatcher之前获取，在响应写出时释放，返回future的服务在future完成时释放
+ */
+public class ServiceConcurrencyLimiter {
+
+    private static final String VEGAS = "vegas";
+
+    private static final int DEFAULT_MAX_LIMIT = 1000;
+
+    // 不限制的服务共用，不做计数
+    private static final ConcurrencyLimit UNLIMITED = new FixedConcurrencyLimit(Integer.MAX_VALUE);
+
+    private final ServiceProvider serviceProvider = SingletonFactory.getInstance(ZkServiceProviderImpl.class);
+
+    private final boolean adaptive = VEGAS.equals(PropertiesUtils.getRpcProperty(RpcConfigEnum.SERVER_LIMITER, "fixed"));
+
+    private final int maxLimit = PropertiesUtils.getRpcIntProperty(RpcConfigEnum.SERVER_LIMITER_MAX_LIMIT, DEFAULT_MAX_LIMIT);
+
+    private final int defaultMaxConcurrency = PropertiesUtils.getRpcIntProperty(RpcConfigEnum.SERVICE_MAX_CONCURRENCY, 0);
+
+    private final ConcurrencyLimit globalLimit = newLimit("*", PropertiesUtils.getRpcIntProperty(RpcConfigEnum.SERVER_MAX_CONCURRENCY, 0));
+
+    // key: rpc service name
+    private final Map<String, ConcurrencyLimit> limits = new ConcurrentHashMap<>();
+
+    /**
+     * @param rpcServiceName RPC服务名称
+     * @return 是否获取到许可，获取到后必须调用release或drop
+     */
+    public boolean tryAcquire(String rpcServiceName) {
+        ConcurrencyLimit limit = limits.get(rpcServiceName);
+        if (limit == null) {
+            RpcServiceConfig rpcServiceConfig;
+            try {
+                rpcServiceConfig = serviceProvider.getServiceConfig(rpcServiceName);
+            } catch (RpcException e) {
+                // 服务不存在，交给RpcRequestHandler返回失败
+                return true;
+            }
+            limit = limits.computeIfAbsent(rpcServiceName, k -> newLimit(k, rpcServiceConfig.getMaxConcurrency() > 0
+                    ? rpcServiceConfig.getMaxConcurrency() : defaultMaxConcurrency));
+        }
+        if (limit != UNLIMITED && !limit.tryAcquire()) {
+            return false;
+        }
+        if (globalLimit != UNLIMITED && !globalLimit.tryAcquire()) {
+            if (limit != UNLIMITED) {
+                limit.cancel();
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 请求处理完成
+     *
+     * @param rpcServiceName RPC服务名称
+     * @param latencyNanos   从获取许可到处理完成的时间
+     */
+    public void release(String rpcServiceName, long latencyNanos) {
+        ConcurrencyLimit limit = limits.get(rpcServiceName);
+        if (limit == null) {
+            return;
+        }
+        if (limit != UNLIMITED) {
+            limit.release(latencyNanos);
+        }
+        if (globalLimit != UNLIMITED) {
+            globalLimit.release(latencyNanos);
+        }
+    }
+
+    /**
+     * 请求获取许可后被dispatcher拒绝
+     *
+     * @param rpcServiceName RPC服务名称
+     */
+    public void drop(String rpcServiceName) {
+        ConcurrencyLimit limit = limits.get(rpcServiceName);
+        if (limit == null) {
+            return;
+        }
+        if (limit != UNLIMITED) {
+            limit.drop();
+        }
+        if (globalLimit != UNLIMITED) {
+            globalLimit.drop();
+        }
+    }
+
+    private ConcurrencyLimit newLimit(String name, int maxConcurrency) {
+        if (adaptive) {
+            return new VegasConcurrencyLimit(name, maxConcurrency > 0 ? maxConcurrency : maxLimit);
+        }
+        return maxConcurrency > 0 ? new FixedConcurrencyLimit(maxConcurrency) : UNLIMITED;
+    }
+}
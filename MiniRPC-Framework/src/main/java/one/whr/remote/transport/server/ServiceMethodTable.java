@@ -0,0 +1,78 @@
+package one.whr.remote.transport.server;
+
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import lombok.extern.slf4j.Slf4j;
+import one.whr.enums.RpcErrorEnum;
+import one.whr.exception.RpcException;
+import one.whr.remote.dto.RpcRequest;
+import one.whr.utils.MethodIdUtil;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 服务的方法表，在服务注册时根据服务接口创建，之后只读
+ * 请求按方法ID查表，没有方法ID的请求按方法名和参数类型查找
+ */
+@Slf4j
+public final class ServiceMethodTable {
+
+    // key: method id，ID冲突的方法不在表中，只能按方法名调用
+    private final IntObjectMap<MethodInvoker> invokersById = new IntObjectHashMap<>();
+
+    private final List<MethodInvoker> invokers = new ArrayList<>();
+
+    /**
+     * @param serviceInterface 服务接口
+     * @param service          服务实例
+     */
+    public ServiceMethodTable(Class<?> serviceInterface, Object service) {
+        List<Integer> conflicts = new ArrayList<>();
+        for (Method method : serviceInterface.getMethods()) {
+            MethodInvoker invoker;
+            try {
+                invoker = new MethodInvoker(service, method);
+            } catch (IllegalAccessException e) {
+                throw new RpcException(e.getMessage(), e);
+            }
+            invokers.add(invoker);
+            int methodId = MethodIdUtil.methodId(method);
+            if (invokersById.put(methodId, invoker) != null) {
+                log.warn("method id conflict in [{}]: [{}]", serviceInterface.getName(), method);
+                conflicts.add(methodId);
+            }
+        }
+        for (int methodId : conflicts) {
+            invokersById.remove(methodId);
+        }
+    }
+
+    /**
+     * @param rpcRequest RPC请求
+     * @return 请求调用的方法
+     */
+    public MethodInvoker lookup(RpcRequest rpcRequest) {
+        MethodInvoker invoker;
+        if (rpcRequest.getMethodId() != 0) {
+            invoker = invokersById.get(rpcRequest.getMethodId());
+        } else {
+            invoker = lookup(rpcRequest.getMethodName(), rpcRequest.getParamTypes());
+        }
+        if (invoker == null) {
+            throw new RpcException(RpcErrorEnum.METHOD_NOT_FOUND,
+                    "interfaceName:" + rpcRequest.getInterfaceName() + ", method:" + rpcRequest.getMethodDescription());
+        }
+        return invoker;
+    }
+
+    private MethodInvoker lookup(String methodName, Class<?>[] paramTypes) {
+        for (MethodInvoker invoker : invokers) {
+            if (invoker.matches(methodName, paramTypes == null ? new Class<?>[0] : paramTypes)) {
+                return invoker;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,39 @@
+package one.whr.remote.transport.server.dispatcher;
+
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.RejectedExecutionHandlers;
+import one.whr.enums.RpcConfigEnum;
+import one.whr.utils.PropertiesUtils;
+import one.whr.utils.concurrent.threadpool.ThreadPoolFactoryUtil;
+
+/**
+ * 固定数量的netty EventExecutor，每个executor一个线程和一个有界队列
+ * 适合不阻塞的服务，线程数默认是cpu核数的两倍
+ * 队列已满时拒绝请求，由RpcServerHandler返回OVERLOADED
+ */
+public class EventExecutorDispatcher implements RequestDispatcher {
+
+    private static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    private final DefaultEventExecutorGroup serviceHandlerGroup;
+
+    public EventExecutorDispatcher() {
+        int threads = PropertiesUtils.getRpcIntProperty(RpcConfigEnum.SERVER_DISPATCHER_THREADS,
+                Runtime.getRuntime().availableProcessors() * 2);
+        int queueSize = PropertiesUtils.getRpcIntProperty(RpcConfigEnum.SERVER_DISPATCHER_QUEUE_SIZE, DEFAULT_QUEUE_SIZE);
+        serviceHandlerGroup = new DefaultEventExecutorGroup(threads,
+                // custom service handlers' thread-pool config
+                ThreadPoolFactoryUtil.createThreadFactory("service-handler-group", false),
+                queueSize, RejectedExecutionHandlers.reject());
+    }
+
+    @Override
+    public void dispatch(Runnable task) {
+        serviceHandlerGroup.next().execute(task);
+    }
+
+    @Override
+    public void shutdown() {
+        serviceHandlerGroup.shutdownGracefully();
+    }
+}
@@ -0,0 +1,25 @@
+package one.whr.remote.transport.server.dispatcher;
+
+import one.whr.annotation.SPI;
+
+/**
+ * 服务端执行服务调用的线程模型，RpcServerHandler在IO线程中收到请求后交给dispatcher执行，
+ * 避免服务调用阻塞IO线程
+ * 通过rpc.server.dispatcher选择：event-executor(默认)、thread-pool、virtual-thread
+ */
+@SPI
+public interface RequestDispatcher {
+
+    /**
+     * 执行一次请求的处理
+     *
+     * @param task 处理请求并写出响应的任务
+     * @throws java.util.concurrent.RejectedExecutionException 队列已满或dispatcher已关闭
+     */
+    void dispatch(Runnable task);
+
+    /**
+     * 服务端关闭时释放线程
+     */
+    void shutdown();
+}
@@ -0,0 +1,45 @@
+package one.whr.remote.transport.server.dispatcher;
+
+import one.whr.enums.RpcConfigEnum;
+import one.whr.utils.PropertiesUtils;
+import one.whr.utils.concurrent.threadpool.CustomThreadPoolConfig;
+import one.whr.utils.concurrent.threadpool.ThreadPoolFactoryUtil;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 有界的ThreadPoolExecutor，适合会阻塞的服务
+ * 核心线程数等于最大线程数，ThreadPoolExecutor只有在队列满了之后才会创建核心线程之外的线程，
+ * 分开配置时阻塞的请求会先在队列中排队；队列也满了之后拒绝请求，由RpcServerHandler返回OVERLOADED
+ */
+public class ThreadPoolDispatcher implements RequestDispatcher {
+
+    private static final String THREAD_NAME_PREFIX = "service-handler-pool";
+
+    private static final int DEFAULT_THREADS = 200;
+
+    private static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    private final ExecutorService executor;
+
+    public ThreadPoolDispatcher() {
+        int threads = PropertiesUtils.getRpcIntProperty(RpcConfigEnum.SERVER_DISPATCHER_THREADS, DEFAULT_THREADS);
+        int queueSize = PropertiesUtils.getRpcIntProperty(RpcConfigEnum.SERVER_DISPATCHER_QUEUE_SIZE, DEFAULT_QUEUE_SIZE);
+        CustomThreadPoolConfig threadPoolConfig = new CustomThreadPoolConfig();
+        threadPoolConfig.setCorePoolSize(threads);
+        threadPoolConfig.setMaximumPoolSize(threads);
+        threadPoolConfig.setWorkQueue(new ArrayBlockingQueue<>(queueSize));
+        executor = ThreadPoolFactoryUtil.createCustomThreadPoolIfAbsent(threadPoolConfig, THREAD_NAME_PREFIX, false);
+    }
+
+    @Override
+    public void dispatch(Runnable task) {
+        executor.execute(task);
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
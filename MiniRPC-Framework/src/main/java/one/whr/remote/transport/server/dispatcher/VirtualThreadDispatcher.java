@@ -0,0 +1,49 @@
+package one.whr.remote.transport.server.dispatcher;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 每个请求一个虚拟线程，阻塞的服务不再受线程数限制，需要JDK 21+
+ * 框架按Java 8编译，通过反射创建executor；运行在低版本JDK上时退回thread-pool
+ * 虚拟线程在synchronized块中阻塞时会占住载体线程，服务实现应尽量使用j.u.c的锁
+ */
+@Slf4j
+public class VirtualThreadDispatcher implements RequestDispatcher {
+
+    private final ExecutorService executor;
+
+    private final RequestDispatcher fallback;
+
+    public VirtualThreadDispatcher() {
+        ExecutorService virtualThreadExecutor = null;
+        try {
+            virtualThreadExecutor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.warn("virtual threads are not available on Java [{}], fall back to thread-pool dispatcher",
+                    System.getProperty("java.version"));
+        }
+        executor = virtualThreadExecutor;
+        fallback = virtualThreadExecutor == null ? new ThreadPoolDispatcher() : null;
+    }
+
+    @Override
+    public void dispatch(Runnable task) {
+        if (executor != null) {
+            executor.execute(task);
+        } else {
+            fallback.dispatch(task);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        } else {
+            fallback.shutdown();
+        }
+    }
+}
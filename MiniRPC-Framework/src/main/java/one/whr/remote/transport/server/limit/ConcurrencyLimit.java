@@ -0,0 +1,35 @@
+package one.whr.remote.transport.server.limit;
+
+/**
+ * 同时在处理的请求数的上限
+ * 请求交给dispatcher之前调用tryAcquire，获取到许可后必须调用release、drop或cancel中的一个
+ */
+public interface ConcurrencyLimit {
+
+    /**
+     * @return 是否获取到许可，没有获取到时请求应当立即被拒绝
+     */
+    boolean tryAcquire();
+
+    /**
+     * 请求处理完成
+     *
+     * @param latencyNanos 从获取许可到处理完成的时间，包括在dispatcher中排队的时间
+     */
+    void release(long latencyNanos);
+
+    /**
+     * 请求因为过载被丢弃，例如dispatcher的队列已满，自适应的上限随之减小
+     */
+    void drop();
+
+    /**
+     * 获取许可后因为其他原因没有处理请求，不影响上限
+     */
+    void cancel();
+
+    /**
+     * @return 当前的上限
+     */
+    int getLimit();
+}
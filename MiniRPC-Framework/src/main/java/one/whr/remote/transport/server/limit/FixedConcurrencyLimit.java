@@ -0,0 +1,50 @@
+package one.whr.remote.transport.server.limit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 固定的上限，来自@RpcService(maxConcurrency)或rpc.properties
+ */
+public class FixedConcurrencyLimit implements ConcurrencyLimit {
+
+    private final int limit;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public FixedConcurrencyLimit(int limit) {
+        this.limit = limit;
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        for (; ; ) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void release(long latencyNanos) {
+        inFlight.decrementAndGet();
+    }
+
+    @Override
+    public void drop() {
+        inFlight.decrementAndGet();
+    }
+
+    @Override
+    public void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+}
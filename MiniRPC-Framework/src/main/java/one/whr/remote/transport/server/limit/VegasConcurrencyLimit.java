@@ -0,0 +1,137 @@
+package one.whr.remote.transport.server.limit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按测得的延迟调整上限，思路与TCP Vegas相同：
+ * 以观察到的最小延迟作为没有排队时的延迟noLoadRtt，估计排队的请求数 queue = limit * (1 - noLoadRtt / rtt)，
+ * 排队少于alpha时增大上限，多于beta时减小上限，请求被丢弃时也减小上限
+ * 每个窗口积累一定数量的样本后调整一次，调整的幅度是log10(limit)，窗口中有丢弃时减小
+ * noLoadRtt每隔一段时间按最近一个窗口中的最小延迟重新测量，服务本身变慢后不会一直限制得过紧
+ */
+@Slf4j
+public class VegasConcurrencyLimit implements ConcurrencyLimit {
+
+    private static final int INITIAL_LIMIT = 20;
+
+    private static final int MIN_WINDOW_SAMPLES = 20;
+
+    // 每隔这么多个窗口重新测量noLoadRtt
+    private static final int PROBE_WINDOWS = 100;
+
+    private final String name;
+
+    private final int maxLimit;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile int limit;
+
+    // 以下字段只在sample中更新，由synchronized保护
+    private long noLoadRttNanos;
+
+    private long windowRttSum;
+
+    private long windowMinRtt;
+
+    private int windowSamples;
+
+    private int windowDrops;
+
+    private int windowMaxInFlight;
+
+    private int windows;
+
+    /**
+     * @param name     用于日志的名称
+     * @param maxLimit 上限的最大值
+     */
+    public VegasConcurrencyLimit(String name, int maxLimit) {
+        this.name = name;
+        this.maxLimit = maxLimit;
+        this.limit = Math.min(INITIAL_LIMIT, maxLimit);
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        for (; ; ) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void release(long latencyNanos) {
+        int current = inFlight.getAndDecrement();
+        sample(latencyNanos, current, false);
+    }
+
+    @Override
+    public void drop() {
+        int current = inFlight.getAndDecrement();
+        sample(0, current, true);
+    }
+
+    @Override
+    public void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    private synchronized void sample(long rttNanos, int inFlightAtRelease, boolean dropped) {
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlightAtRelease);
+        if (dropped) {
+            windowDrops++;
+        } else if (rttNanos > 0) {
+            windowRttSum += rttNanos;
+            windowMinRtt = windowSamples == 0 ? rttNanos : Math.min(windowMinRtt, rttNanos);
+            windowSamples++;
+            if (noLoadRttNanos == 0 || rttNanos < noLoadRttNanos) {
+                noLoadRttNanos = rttNanos;
+            }
+        }
+        // 丢弃也计入窗口，连续的丢弃每个窗口只减小一次上限
+        if (windowSamples + windowDrops < MIN_WINDOW_SAMPLES) {
+            return;
+        }
+        int current = limit;
+        double step = Math.max(1, Math.log10(current));
+        int newLimit = current;
+        if (windowDrops > 0) {
+            newLimit = (int) (current - step);
+        } else {
+            double queue = current * (1 - (double) noLoadRttNanos / (windowRttSum / windowSamples));
+            if (queue <= 3 * step) {
+                // 上限没有被用到一半时增大没有意义
+                if (windowMaxInFlight * 2 >= current) {
+                    newLimit = (int) (current + step);
+                }
+            } else if (queue >= 6 * step) {
+                newLimit = (int) (current - step);
+            }
+        }
+        newLimit = Math.max(1, Math.min(maxLimit, newLimit));
+        if (newLimit != current) {
+            limit = newLimit;
+            log.debug("concurrency limit of [{}]: [{}] -> [{}]", name, current, newLimit);
+        }
+        if (++windows % PROBE_WINDOWS == 0 && windowSamples > 0) {
+            noLoadRttNanos = windowMinRtt;
+        }
+        windowRttSum = 0;
+        windowSamples = 0;
+        windowMaxInFlight = 0;
+        windowDrops = 0;
+    }
+}
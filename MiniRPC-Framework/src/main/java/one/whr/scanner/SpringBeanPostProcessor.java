@@ -4,12 +4,15 @@ import lombok.extern.slf4j.Slf4j;
 import one.whr.annotation.RpcReference;
 import one.whr.annotation.RpcService;
 import one.whr.config.RpcServiceConfig;
+import one.whr.enums.RpcConfigEnum;
 import one.whr.extension.ExtensionLoader;
 import one.whr.factory.SingletonFactory;
 import one.whr.proxy.RpcClientProxy;
 import one.whr.registry.ServiceProvider;
 import one.whr.registry.zookeeper.ZkServiceProviderImpl;
 import one.whr.remote.transport.RpcRequestTransport;
+import one.whr.remote.transport.client.RpcClient;
+import one.whr.utils.PropertiesUtils;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.stereotype.Component;
@@ -22,9 +25,13 @@ public class SpringBeanPostProcessor implements BeanPostProcessor {
     private final ServiceProvider serviceProvider;
     private final RpcRequestTransport rpcClient;
 
+    // 注入代理时就建立到服务的连接
+    private final boolean warmUp;
+
     public SpringBeanPostProcessor() {
         this.serviceProvider = SingletonFactory.getInstance(ZkServiceProviderImpl.class);
         this.rpcClient = ExtensionLoader.getExtensionLoader(RpcRequestTransport.class).getExtension("netty");
+        this.warmUp = PropertiesUtils.getRpcBooleanProperty(RpcConfigEnum.CLIENT_WARMUP, false);
     }
 
     @Override
@@ -35,6 +42,9 @@ public class SpringBeanPostProcessor implements BeanPostProcessor {
             RpcServiceConfig rpcServiceConfig = RpcServiceConfig.builder()
                     .group(rpcService.group())
                     .version(rpcService.version())
+                    .serialization(rpcService.serialization())
+                    .compress(rpcService.compress())
+                    .maxConcurrency(rpcService.maxConcurrency())
                     .service(bean)
                     .build();
 
@@ -53,9 +63,13 @@ public class SpringBeanPostProcessor implements BeanPostProcessor {
                 RpcServiceConfig rpcServiceConfig = RpcServiceConfig.builder()
                         .group(rpcReference.group())
                         .version(rpcReference.version())
+                        .serialization(rpcReference.serialization())
+                        .compress(rpcReference.compress())
+                        .timeout(rpcReference.timeout())
                         .build();
                 RpcClientProxy rpcClientProxy = new RpcClientProxy(rpcClient, rpcServiceConfig);
                 Object clientProxy = rpcClientProxy.getProxy(field.getType());
+                warmUp(rpcServiceConfig, field.getType());
                 field.setAccessible(true);
                 try {
                     field.set(bean, clientProxy);
@@ -66,4 +80,23 @@ public class SpringBeanPostProcessor implements BeanPostProcessor {
         }
         return bean;
     }
+
+    /**
+     * rpc.client.warmup为true时预先建立连接，服务还没有启动等失败不影响启动
+     *
+     * @param rpcServiceConfig 服务配置
+     * @param serviceInterface 服务接口
+     */
+    private void warmUp(RpcServiceConfig rpcServiceConfig, Class<?> serviceInterface) {
+        if (!warmUp || !(rpcClient instanceof RpcClient)) {
+            return;
+        }
+        try {
+            ((RpcClient) rpcClient).warmUp(rpcServiceConfig, serviceInterface);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("fail to warm up connections of [{}]", serviceInterface.getName(), e);
+        }
+    }
 }
@@ -4,52 +4,187 @@ import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import lombok.extern.slf4j.Slf4j;
+import one.whr.enums.RpcConfigEnum;
 import one.whr.exception.SerializationException;
 import one.whr.remote.dto.RpcRequest;
 import one.whr.remote.dto.RpcResponse;
+import one.whr.utils.PropertiesUtils;
+import one.whr.utils.StringUtil;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 @Slf4j
 public class KryoSerializer implements Serializer {
 
+    private static final int DEFAULT_POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    private static final int BUFFER_SIZE = 4096;
+
+    // buffer在序列化大对象时会扩容，归还时超过这个大小就换回小buffer，避免池中长期占用大块内存
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
     /**
-     * The Kryo instance is not thread safe, and quite expensive to build
-     * so storing it on a ThreadLocal is a recommended way to make sure our serializer is thread safe.
+     * The Kryo instance is not thread safe, and quite expensive to build,
+     * so instances are kept in a bounded pool together with their Output/Input buffers.
+     * A Kryo reused this way also keeps its class resolution caches across calls.
+     * When the pool is empty a new instance is built, and when it is full the returned instance is dropped.
      */
-    private final ThreadLocal<Kryo> kryoThreadLocal = ThreadLocal.withInitial(() -> {
-        Kryo kryo = new Kryo();
-        kryo.register(RpcResponse.class);
-        kryo.register(RpcRequest.class);
-        return kryo;
-    });
+    private final BlockingQueue<KryoHolder> pool;
+
+    // 除了RpcRequest和RpcResponse之外预先注册的类，客户端和服务端的顺序必须一致
+    private final List<Class<?>> registrations;
+
+    public KryoSerializer() {
+        int poolSize = PropertiesUtils.getRpcIntProperty(RpcConfigEnum.KRYO_POOL_SIZE, DEFAULT_POOL_SIZE);
+        this.pool = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+        this.registrations = loadRegistrations();
+    }
 
     @Override
     public byte[] serialize(Object obj) {
-        try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-             Output output = new Output(byteArrayOutputStream)) {
-            Kryo kryo = kryoThreadLocal.get();
-            kryo.writeObject(output, obj);
-            kryoThreadLocal.remove();
+        KryoHolder holder = borrow();
+        try {
+            Output output = holder.output;
+            output.setOutputStream(null);
+            holder.kryo.writeObject(output, obj);
             return output.toBytes();
         } catch (Exception e) {
             throw new SerializationException("[Kryo] Serialization failed.");
+        } finally {
+            release(holder);
         }
     }
 
+    /**
+     * Output只作为out前面的一层缓冲，写满或flush时直接写入out，不再生成完整的byte数组
+     */
     @Override
-    public <T> T deserialize(byte[] bytes, Class<T> clazz) {
-        try (ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(bytes);
-             Input input = new Input(byteArrayInputStream)) {
+    public void serialize(Object obj, OutputStream out) {
+        KryoHolder holder = borrow();
+        try {
+            Output output = holder.output;
+            output.setOutputStream(out);
+            holder.kryo.writeObject(output, obj);
+            output.flush();
+        } catch (Exception e) {
+            throw new SerializationException("[Kryo] Serialization failed.");
+        } finally {
+            holder.output.setOutputStream(null);
+            release(holder);
+        }
+    }
 
-            Kryo kryo = kryoThreadLocal.get();
-            Object o = kryo.readObject(input, clazz);
-            kryoThreadLocal.remove();
+    @Override
+    public <T> T deserialize(byte[] bytes, Class<T> clazz) {
+        KryoHolder holder = borrow();
+        try {
+            Input input = holder.input;
+            input.setBuffer(bytes);
+            Object o = holder.kryo.readObject(input, clazz);
             return clazz.cast(o);
+        } catch (Exception e) {
+            throw new SerializationException("[Kryo] Deserialization failed.");
+        } finally {
+            // 不再引用调用方的数组
+            holder.input.setBuffer(holder.inputBuffer);
+            release(holder);
+        }
+    }
 
+    /**
+     * Input按块从in中读取，不需要先得到完整的byte数组
+     */
+    @Override
+    public <T> T deserialize(InputStream in, Class<T> clazz) {
+        KryoHolder holder = borrow();
+        try {
+            Input input = holder.input;
+            input.setBuffer(holder.inputBuffer);
+            input.setInputStream(in);
+            Object o = holder.kryo.readObject(input, clazz);
+            return clazz.cast(o);
         } catch (Exception e) {
             throw new SerializationException("[Kryo] Deserialization failed.");
+        } finally {
+            holder.input.setInputStream(null);
+            release(holder);
+        }
+    }
+
+    private KryoHolder borrow() {
+        KryoHolder holder = pool.poll();
+        return holder != null ? holder : new KryoHolder(createKryo());
+    }
+
+    private void release(KryoHolder holder) {
+        holder.shrinkIfNecessary();
+        pool.offer(holder);
+    }
+
+    private Kryo createKryo() {
+        Kryo kryo = new Kryo();
+        kryo.register(RpcResponse.class);
+        kryo.register(RpcRequest.class);
+        for (Class<?> clazz : registrations) {
+            kryo.register(clazz);
+        }
+        return kryo;
+    }
+
+    /**
+     * 从rpc.properties中读取需要预先注册的类，多个类名用逗号分隔
+     * 注册的类由Kryo用一个整数id表示，不再在每条消息中写入完整的类名
+     * 找不到类时直接失败，否则两端的注册id会错位
+     *
+     * @return 需要注册的类
+     */
+    private static List<Class<?>> loadRegistrations() {
+        String value = PropertiesUtils.getRpcProperty(RpcConfigEnum.KRYO_REGISTRATIONS, null);
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        List<Class<?>> classes = new ArrayList<>();
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        for (String className : value.split(",")) {
+            if (StringUtil.isBlank(className)) {
+                continue;
+            }
+            try {
+                classes.add(Class.forName(className.trim(), false, classLoader));
+            } catch (ClassNotFoundException e) {
+                throw new SerializationException("[Kryo] Registered class not found: " + className.trim());
+            }
+        }
+        log.info("Kryo pre-registered classes: {}", classes);
+        return classes;
+    }
+
+    /**
+     * 池中的元素，Kryo实例和与之配套的可复用buffer
+     */
+    private static final class KryoHolder {
+        private final Kryo kryo;
+
+        private final byte[] inputBuffer = new byte[BUFFER_SIZE];
+
+        private final Input input = new Input(inputBuffer);
+
+        private Output output = new Output(BUFFER_SIZE, -1);
+
+        private KryoHolder(Kryo kryo) {
+            this.kryo = kryo;
+        }
+
+        private void shrinkIfNecessary() {
+            if (output.getBuffer().length > MAX_RETAINED_BUFFER_SIZE) {
+                output = new Output(BUFFER_SIZE, -1);
+            }
         }
     }
 }
@@ -0,0 +1,89 @@
+package one.whr.serialization;
+
+import io.protostuff.LinkedBuffer;
+import io.protostuff.ProtostuffIOUtil;
+import io.protostuff.Schema;
+import io.protostuff.runtime.RuntimeSchema;
+import one.whr.exception.SerializationException;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于protostuff runtime schema的序列化实现
+ * 对于POJO为主的消息体，编码结果比Kryo更紧凑
+ */
+public class ProtostuffSerializer implements Serializer {
+
+    // 每个类的schema只通过反射构建一次
+    private final Map<Class<?>, Schema<?>> schemaCache = new ConcurrentHashMap<>();
+
+    /**
+     * LinkedBuffer不是线程安全的，每个线程复用自己的buffer，用完之后clear
+     */
+    private final ThreadLocal<LinkedBuffer> bufferThreadLocal =
+            ThreadLocal.withInitial(() -> LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE));
+
+    @Override
+    public byte[] serialize(Object obj) {
+        Schema<Object> schema = getSchema(obj.getClass());
+        LinkedBuffer buffer = bufferThreadLocal.get();
+        try {
+            return ProtostuffIOUtil.toByteArray(obj, schema, buffer);
+        } catch (Exception e) {
+            throw new SerializationException("[Protostuff] Serialization failed.");
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    @Override
+    public void serialize(Object obj, OutputStream out) {
+        Schema<Object> schema = getSchema(obj.getClass());
+        LinkedBuffer buffer = bufferThreadLocal.get();
+        try {
+            ProtostuffIOUtil.writeTo(out, obj, schema, buffer);
+        } catch (Exception e) {
+            throw new SerializationException("[Protostuff] Serialization failed.");
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    @Override
+    public <T> T deserialize(byte[] bytes, Class<T> clazz) {
+        Schema<T> schema = getSchema(clazz);
+        try {
+            T message = schema.newMessage();
+            ProtostuffIOUtil.mergeFrom(bytes, message, schema);
+            return message;
+        } catch (Exception e) {
+            throw new SerializationException("[Protostuff] Deserialization failed.");
+        }
+    }
+
+    /**
+     * 从流中读取直到结束，in中只能包含这一个对象的数据
+     */
+    @Override
+    public <T> T deserialize(InputStream in, Class<T> clazz) {
+        Schema<T> schema = getSchema(clazz);
+        LinkedBuffer buffer = bufferThreadLocal.get();
+        try {
+            T message = schema.newMessage();
+            ProtostuffIOUtil.mergeFrom(in, message, schema, buffer);
+            return message;
+        } catch (Exception e) {
+            throw new SerializationException("[Protostuff] Deserialization failed.");
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Schema<T> getSchema(Class<?> clazz) {
+        return (Schema<T>) schemaCache.computeIfAbsent(clazz, RuntimeSchema::getSchema);
+    }
+}
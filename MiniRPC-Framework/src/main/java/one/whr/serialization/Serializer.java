@@ -1,10 +1,53 @@
 package one.whr.serialization;
 
 import one.whr.annotation.SPI;
+import one.whr.exception.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 @SPI
 public interface Serializer {
     byte[] serialize(Object obj);
 
     <T> T deserialize(byte[] bytes, Class<T> clazz);
+
+    /**
+     * 将对象直接序列化到输出流中，编码器借此把消息体直接写进netty的ByteBuf
+     * 默认实现先序列化为byte数组再写入，实现类应当覆盖这个方法以避免中间数组
+     *
+     * @param obj 需要序列化的对象
+     * @param out 输出流，调用方负责关闭
+     */
+    default void serialize(Object obj, OutputStream out) {
+        try {
+            out.write(serialize(obj));
+        } catch (IOException e) {
+            throw new SerializationException("Serialization to stream failed.");
+        }
+    }
+
+    /**
+     * 直接从输入流中反序列化，解码器借此从帧的ByteBuf中读取消息体
+     * 默认实现先把流读入byte数组再反序列化，实现类应当覆盖这个方法以流式读取
+     *
+     * @param in    输入流，只包含这一个对象的数据，调用方负责关闭
+     * @param clazz 对象类型
+     * @param <T>   类型
+     * @return 反序列化后的对象
+     */
+    default <T> T deserialize(InputStream in, Class<T> clazz) {
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > -1) {
+                out.write(buffer, 0, n);
+            }
+            return deserialize(out.toByteArray(), clazz);
+        } catch (IOException e) {
+            throw new SerializationException("Deserialization from stream failed.");
+        }
+    }
 }
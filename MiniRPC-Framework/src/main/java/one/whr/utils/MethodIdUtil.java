@@ -0,0 +1,52 @@
+package one.whr.utils;
+
+import java.lang.reflect.Method;
+
+/**
+ * 方法ID：方法签名(方法名和参数类型)的hash，客户端和服务端各自根据接口计算，不需要协商
+ * 请求只携带方法ID，服务端按ID在服务的方法表中找到调用方法
+ * 0表示没有方法ID，请求携带方法名和参数类型
+ */
+public final class MethodIdUtil {
+
+    private MethodIdUtil() {
+    }
+
+    /**
+     * @param methodName 方法名
+     * @param paramTypes 参数类型
+     * @return 方法签名的hash，String.hashCode的算法是固定的，不同的JVM结果相同
+     */
+    public static int methodId(String methodName, Class<?>[] paramTypes) {
+        StringBuilder signature = new StringBuilder(methodName).append('(');
+        for (int i = 0; i < paramTypes.length; i++) {
+            if (i > 0) {
+                signature.append(',');
+            }
+            signature.append(paramTypes[i].getName());
+        }
+        return signature.append(')').toString().hashCode();
+    }
+
+    public static int methodId(Method method) {
+        return methodId(method.getName(), method.getParameterTypes());
+    }
+
+    /**
+     * 客户端使用的方法ID，与服务接口中其他方法的ID冲突时返回0，改为按方法名调用
+     * 和服务端一样按服务接口的getMethods()检查冲突，包括从父接口继承的方法
+     *
+     * @param serviceInterface 代理的服务接口
+     * @param method           接口方法
+     * @return 方法ID，0表示按方法名调用
+     */
+    public static int uniqueMethodId(Class<?> serviceInterface, Method method) {
+        int methodId = methodId(method);
+        for (Method other : serviceInterface.getMethods()) {
+            if (!other.equals(method) && methodId(other) == methodId) {
+                return 0;
+            }
+        }
+        return methodId;
+    }
+}
@@ -1,6 +1,7 @@
 package one.whr.utils;
 
 import lombok.extern.slf4j.Slf4j;
+import one.whr.enums.RpcConfigEnum;
 
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -11,6 +12,9 @@ import java.util.Properties;
 
 @Slf4j
 public class PropertiesUtils {
+    // rpc.properties只在第一次使用时读取一次，文件不存在时为空的Properties
+    private static volatile Properties rpcProperties;
+
     private PropertiesUtils() {
     }
 
@@ -31,4 +35,51 @@ public class PropertiesUtils {
         return properties;
     }
 
+    /**
+     * 读取rpc.properties中的配置项
+     *
+     * @param config       配置项
+     * @param defaultValue 没有配置时的默认值
+     * @return 配置值
+     */
+    public static String getRpcProperty(RpcConfigEnum config, String defaultValue) {
+        String value = getRpcProperties().getProperty(config.getPropertyValue());
+        return StringUtil.isBlank(value) ? defaultValue : value.trim();
+    }
+
+    public static int getRpcIntProperty(RpcConfigEnum config, int defaultValue) {
+        String value = getRpcProperty(config, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            log.error("Invalid value [{}] for [{}], use default [{}]", value, config.getPropertyValue(), defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static boolean getRpcBooleanProperty(RpcConfigEnum config, boolean defaultValue) {
+        String value = getRpcProperty(config, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    private static Properties getRpcProperties() {
+        Properties properties = rpcProperties;
+        if (properties == null) {
+            synchronized (PropertiesUtils.class) {
+                properties = rpcProperties;
+                if (properties == null) {
+                    properties = readPropertiesFile(RpcConfigEnum.RPC_CONFIG_PATH.getPropertyValue());
+                    if (properties == null) {
+                        properties = new Properties();
+                    }
+                    rpcProperties = properties;
+                }
+            }
+        }
+        return properties;
+    }
+
 }
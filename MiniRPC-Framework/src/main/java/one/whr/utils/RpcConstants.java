@@ -9,7 +9,8 @@ public class RpcConstants {
 
     public static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
 
-    public static final byte VERSION = 1;
+    // 2: 请求使用连接内的服务字典(serviceId)和方法ID(methodId)
+    public static final byte VERSION = 2;
 
     public static final byte TOTAL_LENGTH = 16;
 
@@ -21,6 +22,9 @@ public class RpcConstants {
 
     public static final byte HEARTBEAT_PONG_TYPE = 4;
 
+    // 服务端正在关闭，客户端不再在这个连接上发送新的请求，已经发出的请求收到响应后关闭连接，没有消息体
+    public static final byte GOAWAY_TYPE = 5;
+
     public static final int HEAD_LENGTH = 16;
 
     public static final String PING = "PING";